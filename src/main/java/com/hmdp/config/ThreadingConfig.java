@@ -0,0 +1,79 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程模型配置
+ * <p>
+ * hmdp.threads.virtual=true 且运行在JDK 21+时，Tomcat请求处理和缓存重建都使用虚拟线程（每个任务一个线程），
+ * 阻塞在Redis/MySQL上时不占用平台线程；此时并发度由Hikari和Lettuce连接池限制。
+ * JVM不支持时打印告警并继续使用平台线程池。
+ * <br>
+ * JDK 21 的虚拟线程在synchronized中阻塞时会钉住载体线程，Caffeine 的 Cache.get(key, loader) 也在桶锁内执行加载函数，
+ * 因此本地缓存一律先 getIfPresent，未命中时在锁外访问Redis/MySQL再写入。
+ */
+@Slf4j
+@Configuration
+public class ThreadingConfig {
+
+    @Value("${hmdp.threads.virtual:false}")
+    private boolean virtual;
+
+    private boolean useVirtualThreads() {
+        if (virtual && !VirtualThreads.isSupported()) {
+            log.warn("hmdp.threads.virtual=true，但当前JVM({})不支持虚拟线程，使用平台线程", System.getProperty("java.version"));
+            return false;
+        }
+        return virtual;
+    }
+
+    /**
+     * Tomcat请求处理使用虚拟线程
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        boolean enabled = useVirtualThreads();
+        return protocolHandler -> {
+            if (enabled) {
+                protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor("http-vt-"));
+                log.info("Tomcat请求处理已切换为虚拟线程");
+            }
+        };
+    }
+
+    /**
+     * 缓存重建线程池（CacheClient）
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService cacheRebuildExecutor() {
+        if (useVirtualThreads()) {
+            return VirtualThreads.newThreadPerTaskExecutor("cache-rebuild-vt-");
+        }
+        // 使用自定义线程池配置
+        return new ThreadPoolExecutor(
+                5,  // 核心线程数：常驻线程
+                20,  // 最大线程数：高峰期最多线程
+                60L, TimeUnit.SECONDS, // 空闲时间：非核心线程存活时间
+                new LinkedBlockingQueue<>(100), // 队列大小：等待队列容量
+                new ThreadFactory() { // 线程工厂：自定义线程创建
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "cache-rebuild-" + threadNumber.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy() // 拒绝策略：调用者执行
+        );
+    }
+}
@@ -88,4 +88,14 @@ public class BlogController {
     public Result queryBlogOfFollow(@RequestParam("lastId") Long max, @RequestParam(value = "offset",defaultValue = "0") Integer offset){
         return blogService.queryBlogOfFollow(max,offset);
     }
+
+    @GetMapping("/fanout/{id}")
+    public Result queryFanoutProgress(@PathVariable("id") Long id) {
+        return blogService.queryFanoutProgress(id);
+    }
+
+    @GetMapping("/feed/metrics")
+    public Result queryFeedMetrics() {
+        return blogService.queryFeedMetrics();
+    }
 }
@@ -6,6 +6,7 @@ import com.hmdp.service.IFollowService;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * <p>
@@ -37,4 +38,16 @@ public class FollowController {
         return followService.common(id);
     }
 
+    @GetMapping("/or/not")
+    public Result isFollowBatch(@RequestParam("ids") List<Long> ids) {
+        return followService.isFollowBatch(ids);
+    }
+
+    @GetMapping("/common/{id}/page")
+    public Result commonPage(@PathVariable("id") Long id,
+                             @RequestParam(value = "cursor", defaultValue = "0") String cursor,
+                             @RequestParam(value = "count", defaultValue = "10") Integer count) {
+        return followService.commonPage(id, cursor, count);
+    }
+
 }
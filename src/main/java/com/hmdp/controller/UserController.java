@@ -9,6 +9,7 @@ import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserProfileCache;
 import com.hmdp.vo.UserVO;
 import com.hmdp.vo.mapper.UserVOMapper;
 import lombok.extern.slf4j.Slf4j;
@@ -39,6 +40,9 @@ public class UserController {
 
     @Resource
     private UserVOMapper userVOMapper;
+
+    @Resource
+    private UserProfileCache userProfileCache;
     /**
      * 查询用户
      * @param id
@@ -46,7 +50,7 @@ public class UserController {
      */
     @GetMapping("/{id}")
     public Result queryUserById(@PathVariable("id") Long id){
-        User user = userService.getById(id);
+        User user = userProfileCache.get(id);
         if (user == null){
             return Result.fail("用户不存在");
         }
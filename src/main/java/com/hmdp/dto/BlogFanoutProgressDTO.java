@@ -0,0 +1,17 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 博客推送粉丝收件箱的进度
+ */
+@Data
+public class BlogFanoutProgressDTO {
+    private Long blogId;
+    // RUNNING / DONE / FAILED
+    private String status;
+    // 开始推送时的粉丝数
+    private Long total;
+    // 已推送的粉丝数
+    private Long pushed;
+}
@@ -0,0 +1,17 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ */
+@Data
+public class CursorResult<T> {
+    private List<T> list;
+    // 下一页游标，null表示没有更多数据
+    private String cursor;
+    // 总数，无法统计时为null
+    private Long total;
+}
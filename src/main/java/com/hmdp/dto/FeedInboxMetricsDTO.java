@@ -0,0 +1,26 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 关注页收件箱大小分布，由收件箱整理任务统计
+ */
+@Data
+public class FeedInboxMetricsDTO {
+    // 收件箱数量
+    private Long inboxes;
+    // 所有收件箱的博客总数
+    private Long entries;
+    // 最大收件箱的博客数
+    private Long maxSize;
+    // 本次被裁剪的收件箱数量和博客数
+    private Long trimmedInboxes;
+    private Long trimmedEntries;
+    // 大小分布：区间上限 -> 收件箱数量
+    private Map<String, Long> distribution;
+    // 统计完成时间
+    private LocalDateTime finishedAt;
+}
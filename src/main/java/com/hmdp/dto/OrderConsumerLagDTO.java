@@ -0,0 +1,22 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 秒杀订单消息队列消费情况
+ */
+@Data
+public class OrderConsumerLagDTO {
+    // 本节点消费者数量
+    private Integer consumers;
+    // 队列总长度
+    private Long streamLength;
+    // 已投递未确认的消息数
+    private Long pending;
+    // 队列最后写入的消息id
+    private String lastGeneratedId;
+    // 消费者组最后投递的消息id
+    private String lastDeliveredId;
+    // 最早一条未处理消息已等待的毫秒数
+    private Long lagMillis;
+}
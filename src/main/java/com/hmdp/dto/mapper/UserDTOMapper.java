@@ -4,7 +4,45 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import org.mapstruct.Mapper;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Mapper(componentModel = "spring")
 public interface UserDTOMapper {
     UserDTO toUserDTO(User user);
+
+    /**
+     * 登录用户Hash -> UserDTO，按字段直接赋值，不使用反射（每个登录请求都会调用）
+     * @param map Redis中的登录用户Hash
+     * @return 用户信息
+     */
+    default UserDTO fromHash(Map<Object, Object> map) {
+        UserDTO userDTO = new UserDTO();
+        Object id = map.get("id");
+        userDTO.setId(id == null ? null : Long.valueOf(id.toString()));
+        Object nickName = map.get("nickName");
+        userDTO.setNickName(nickName == null ? null : nickName.toString());
+        Object icon = map.get("icon");
+        userDTO.setIcon(icon == null ? null : icon.toString());
+        return userDTO;
+    }
+
+    /**
+     * UserDTO -> 登录用户Hash，忽略null字段
+     * @param userDTO 用户信息
+     * @return Hash字段
+     */
+    default Map<String, String> toHash(UserDTO userDTO) {
+        Map<String, String> map = new HashMap<>(4);
+        if (userDTO.getId() != null) {
+            map.put("id", userDTO.getId().toString());
+        }
+        if (userDTO.getNickName() != null) {
+            map.put("nickName", userDTO.getNickName());
+        }
+        if (userDTO.getIcon() != null) {
+            map.put("icon", userDTO.getIcon());
+        }
+        return map;
+    }
 }
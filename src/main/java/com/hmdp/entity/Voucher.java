@@ -80,6 +80,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private Integer stock;
 
+    /**
+     * 秒杀库存分段数，大于1时库存拆分到多个段（不同的hash slot），用于超热门秒杀券
+     */
+    @TableField(exist = false)
+    private Integer stockSegments;
+
     /**
      * 生效时间
      */
@@ -0,0 +1,13 @@
+package com.hmdp.exception;
+
+/**
+ * 秒杀订单业务异常
+ */
+public class VoucherOrderBusinessException extends BaseException {
+
+    public VoucherOrderBusinessException() {
+    }
+    public VoucherOrderBusinessException(String message) {
+        super(message);
+    }
+}
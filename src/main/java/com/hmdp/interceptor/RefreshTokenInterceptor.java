@@ -1,19 +1,15 @@
 package com.hmdp.interceptor;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.UserDTO;
-import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.LoginSessionCache;
+import com.hmdp.utils.SignedTokenManager;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author luo20
@@ -21,10 +17,13 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessionCache loginSessionCache;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    private SignedTokenManager signedTokenManager;
+
+    public RefreshTokenInterceptor(LoginSessionCache loginSessionCache, SignedTokenManager signedTokenManager) {
+        this.loginSessionCache = loginSessionCache;
+        this.signedTokenManager = signedTokenManager;
     }
 
     // 添加ThreadLocal存储token
@@ -38,24 +37,31 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             // 执行到这里就结束了，下面的代码不会执行
             return true;
         }
-        // 2.获取token获取redis中的用户
-        String key = RedisConstants.LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        // 2.根据token获取用户（签名令牌只校验签名；否则本地会话缓存 -> redis）
+        boolean signed = signedTokenManager.isEnabled();
+        UserDTO userDTO = signed ? signedTokenManager.verify(token) : loginSessionCache.get(token);
         // 3.判断用户是否存在
-        if (ObjectUtils.isEmpty(userMap)) {
+        if (userDTO == null) {
             // 执行到这里就结束了，下面的代码不会执行
             return true;
         }
-        // 5.将查询到的Hash数据转为UserDTO对象 ;第三个参数false意思是不忽略转换错误的字段
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
         // 6.存在,保存用户信息到ThreadLocal
         UserHolder.saveUser(userDTO);
         // 6.1 存储token到ThreadLocal
         TOKEN_HOLDER.set(token);
-        // 7.刷新token有效期
-        stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
+        // 7.刷新token有效期（懒续期模式下按需合并续期），签名令牌不续期
+        if (!signed) {
+            loginSessionCache.touch(token);
+        }
         // 8.放行
         return true;
     }
 
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        // 所有路径都经过本拦截器，在这里清理ThreadLocal，避免线程复用时（包括不需要登录的路径）串用上一个请求的用户
+        UserHolder.removeUser();
+        TOKEN_HOLDER.remove();
+    }
+
 }
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Follow;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,17 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface FollowMapper extends BaseMapper<Follow> {
 
+    /**
+     * 多行INSERT批量保存关注关系
+     * @param follows 关注关系，不能为空
+     * @return 影响行数
+     */
+    int insertBatch(@Param("follows") List<Follow> follows);
+
+    /**
+     * 按 (user_id, follow_user_id) 批量删除关注关系
+     * @param follows 关注关系，不能为空
+     * @return 影响行数
+     */
+    int deleteBatch(@Param("follows") List<Follow> follows);
 }
@@ -36,4 +36,17 @@ public interface IBlogService extends IService<Blog> {
      * @return
      */
     Result queryBlogOfFollow(Long max, Integer offset);
+
+    /**
+     * 查询博客推送给粉丝的进度
+     * @param id 博客id
+     * @return 推送进度
+     */
+    Result queryFanoutProgress(Long id);
+
+    /**
+     * 查询最近一次统计的收件箱大小分布
+     * @return 收件箱统计
+     */
+    Result queryFeedMetrics();
 }
@@ -0,0 +1,40 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.CursorResult;
+import com.hmdp.vo.FollowUserVO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 关注关系图（基于Redis中的关注集合）
+ */
+public interface IFollowGraphService {
+
+    /**
+     * 批量查询关注状态，一次SMISMEMBER
+     * @param userId 用户id
+     * @param targetIds 目标用户id
+     * @return 目标用户id -> 是否已关注
+     */
+    Map<Long, Boolean> isFollowing(Long userId, Collection<Long> targetIds);
+
+    /**
+     * 分页查询共同关注
+     * @param userId 用户id
+     * @param otherId 另一个用户id
+     * @param cursor 游标，首页传0
+     * @param count 每页数量
+     * @return 共同关注的用户（带当前用户的关注状态）
+     */
+    CursorResult<FollowUserVO> commonFollows(Long userId, Long otherId, String cursor, int count);
+
+    /**
+     * 填充用户资料和当前用户的关注状态
+     * @param viewerId 当前用户id，未登录时为null
+     * @param userIds 用户id
+     * @return 按传入顺序返回，不存在的用户被跳过
+     */
+    List<FollowUserVO> hydrate(Long viewerId, List<Long> userIds);
+}
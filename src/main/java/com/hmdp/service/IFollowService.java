@@ -31,13 +31,11 @@ public interface IFollowService extends IService<Follow> {
     Result isFollow(Long followUserId);
 
     /**
-     * 添加关注结果
-     * @param followUserId
-     * @param result
-     * @param userId
-     * @return
+     * 批量写入关注事件（同一对用户只保留最后一次操作）：先按用户对删除，再插入关注关系，重复执行结果相同
+     * @param follows 需要保留的关注关系
+     * @param pairs 本批涉及的全部用户对
      */
-    void addOrRemoveResult(Long followUserId, List<Object> result, Long userId);
+    void applyFollowEvents(List<Follow> follows, List<Follow> pairs);
 
     /**
      * 获取共同关注
@@ -45,4 +43,20 @@ public interface IFollowService extends IService<Follow> {
      * @return
      */
     Result common(Long id);
+
+    /**
+     * 批量查询关注状态
+     * @param ids 目标用户id
+     * @return 用户id -> 是否已关注
+     */
+    Result isFollowBatch(List<Long> ids);
+
+    /**
+     * 分页获取共同关注（带关注状态）
+     * @param id 另一个用户id
+     * @param cursor 游标，首页传0
+     * @param count 每页数量
+     * @return 游标分页结果
+     */
+    Result commonPage(Long id, String cursor, Integer count);
 }
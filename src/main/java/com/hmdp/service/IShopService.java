@@ -28,4 +28,22 @@ public interface IShopService extends IService<Shop> {
     Result update(Shop shop);
 
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    /**
+     * 根据商铺名称关键字分页查询（名称或地址包含关键字）
+     * @param name 关键字，为空时查询全部
+     * @param current 页码
+     * @return 商铺列表
+     */
+    Result queryShopByName(String name, Integer current);
+
+    /**
+     * 按距离游标分页查询附近商铺
+     * @param typeId 商铺类型
+     * @param cursor 上一页返回的游标，首页为空
+     * @param x 经度
+     * @param y 纬度
+     * @return 游标分页结果，cursor为null表示没有下一页
+     */
+    Result queryShopByTypeScroll(Integer typeId, String cursor, Double x, Double y);
 }
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -23,5 +25,17 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     void createVoucherOrder(VoucherOrder voucherOrder);
 
+    /**
+     * 批量创建订单，每个券只扣减一次库存
+     * @param voucherOrders
+     */
+    void createVoucherOrderBatch(List<VoucherOrder> voucherOrders);
+
+    /**
+     * 查询订单消息队列的消费延迟
+     * @return
+     */
+    Result queryOrderConsumerLag();
+
     // Result createVoucherOrder(Long voucherId) throws InterruptedException;
 }
@@ -2,7 +2,9 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.BlogFanoutProgressDTO;
+import com.hmdp.dto.FeedInboxMetricsDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
@@ -10,23 +12,36 @@ import com.hmdp.entity.Blog;
 import com.hmdp.entity.User;
 import com.hmdp.exception.BlogBusinessException;
 import com.hmdp.mapper.BlogMapper;
-import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IUserService;
+import com.hmdp.utils.FeedMerger;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserProfileCache;
 import com.hmdp.vo.UserVO;
 import com.hmdp.vo.mapper.UserVOMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.MapScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.StringRedisConnection;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -36,11 +51,13 @@ import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -55,9 +72,6 @@ import java.util.stream.Collectors;
 @Slf4j
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
-    @Resource
-    private IUserService userService;
-
     @Resource
     private UserVOMapper userVOMapper;
 
@@ -65,7 +79,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private UserMapper userMapper;
+    private UserProfileCache userProfileCache;
 
     @Resource
     private RedissonClient redissonClient;
@@ -79,10 +93,91 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         BLOG_LIKED_SCRIPT.setResultType(Long.class);
     }
 
+    private static final DefaultRedisScript<Long> LIKE_FLUSH_ACK_SCRIPT;
+
+    static {
+        LIKE_FLUSH_ACK_SCRIPT = new DefaultRedisScript<>();
+        LIKE_FLUSH_ACK_SCRIPT.setLocation(new ClassPathResource("likeFlushAck.lua"));
+        LIKE_FLUSH_ACK_SCRIPT.setResultType(Long.class);
+    }
+
     // 添加定时任务线程池
     private static final ScheduledExecutorService SCHEDULED_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+    // 耗时的全量对账和收件箱整理使用单独的线程，不阻塞秒级的点赞数增量刷新
+    private static final ScheduledExecutorService MAINTENANCE_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "blog-maintenance");
+        t.setDaemon(true);
+        return t;
+    });
     private volatile boolean running = true;
 
+    // 博客推送任务队列及消费者组：发布时写入stream，消费者线程推送给粉丝，进程重启后从pending-list继续
+    private static final String FANOUT_QUEUE_NAME = "stream.blog.fanout";
+    private static final String FANOUT_GROUP_NAME = "g1";
+
+    // 推送消费者线程数，每个线程是组内一个独立的消费者 c1..cN
+    @Value("${hmdp.blog.fanout.consumers:2}")
+    private int fanoutConsumers;
+
+    private ExecutorService fanoutExecutor;
+    private static final String FANOUT_RUNNING = "RUNNING";
+    private static final String FANOUT_DONE = "DONE";
+    private static final String FANOUT_FAILED = "FAILED";
+
+    // 每批推送的粉丝数量
+    @Value("${hmdp.blog.fanout.chunk-size:500}")
+    private int fanoutChunkSize;
+
+    // 粉丝数超过该值的作者不再推送，只写发件箱（推拉结合）
+    @Value("${hmdp.blog.feed.push-threshold:5000}")
+    private long feedPushThreshold;
+
+    // 关注页每页博客数
+    private static final int FEED_PAGE_SIZE = 2;
+
+    // 每个收件箱、发件箱最多保留的博客数
+    @Value("${hmdp.blog.feed.inbox-max-size:1000}")
+    private long feedInboxMaxSize;
+
+    // 收件箱整理间隔（分钟）
+    @Value("${hmdp.blog.feed.compact-interval-minutes:360}")
+    private long feedCompactIntervalMinutes;
+
+    // 收件箱大小分布的区间上限，最后一个区间为超过上限
+    private static final long[] FEED_SIZE_BUCKETS = {10, 100, 500, 1000};
+
+    // 点赞数刷回数据库的间隔（毫秒）
+    @Value("${hmdp.blog.like-flush.interval-millis:1000}")
+    private long likeFlushIntervalMillis;
+
+    // 每批刷回的博客数量
+    @Value("${hmdp.blog.like-flush.chunk-size:500}")
+    private int likeFlushChunkSize;
+
+    // 全量对账的间隔（分钟），正常情况下点赞数由增量刷新同步
+    @Value("${hmdp.blog.like-sync.reconcile-minutes:60}")
+    private long likeReconcileMinutes;
+
+    // 全量对账时每次HSCAN的数量
+    @Value("${hmdp.blog.like-sync.page-size:500}")
+    private int likeSyncPageSize;
+
+    // 热门排行榜保留的博客数量
+    @Value("${hmdp.blog.hot.max-size:10000}")
+    private long hotMaxSize;
+
+    // 热门排行榜加载标记：加载中（带过期时间）、已加载（永久）
+    private static final String HOT_INIT_LOADING = "LOADING";
+    private static final String HOT_INIT_DONE = "DONE";
+
+    // 热度半衰期（小时），0表示不衰减，排行榜按点赞数排序
+    @Value("${hmdp.blog.hot.half-life-hours:0}")
+    private double hotHalfLifeHours;
+
+    // 单次HSCAN的超时时间（毫秒）
+    @Value("${hmdp.blog.like-sync.timeout-millis:3000}")
+    private long likeSyncTimeoutMillis;
+
     @PostConstruct
     private void init() {
         // 原有的初始化代码
@@ -93,18 +188,87 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             log.error("Redisson客户端连接异常", e);
         }
 
+        // 初始化热门排行榜
+        SCHEDULED_EXECUTOR.submit(this::initHotBlogs);
+
         // 启动初始化同步任务
         startInitialSync();
 
-        // 启动定时同步任务（每分钟执行一次）
+        // 启动定时同步任务（全量对账）
         startScheduledSync();
+
+        // 启动点赞数增量刷新任务
+        startLikeFlush();
+
+        // 定时维护热门排行榜
+        SCHEDULED_EXECUTOR.scheduleAtFixedRate(this::maintainHotBlogs, 1, 1, TimeUnit.HOURS);
+
+        // 启动博客推送消费者
+        startFanoutConsumers();
+
+        // 定时整理收件箱
+        MAINTENANCE_EXECUTOR.scheduleAtFixedRate(this::compactFeedInboxes,
+                feedCompactIntervalMinutes, feedCompactIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 首次上线或Redis数据丢失时从数据库加载点赞数最多的博客
+     * <p>
+     * 是否已加载以 BLOG_HOT_INIT_KEY 为准，而不是排行榜是否存在：启动期间的点赞和发布会先创建排行榜。
+     * 加载使用 ZADD NX，不覆盖点赞脚本写入的更新的分数
+     */
+    private void initHotBlogs() {
+        try {
+            // 多个节点同时启动时只由一个节点加载，加载中的标记10分钟后过期，加载节点宕机后可由其他节点重试
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(RedisConstants.BLOG_HOT_INIT_KEY, HOT_INIT_LOADING, 10, TimeUnit.MINUTES);
+            if (!Boolean.TRUE.equals(first)) {
+                return;
+            }
+            List<Blog> blogs = query().select("id", "liked")
+                    .orderByDesc("liked")
+                    .last("limit " + hotMaxSize)
+                    .list();
+            if (!blogs.isEmpty()) {
+                Set<ZSetOperations.TypedTuple<String>> tuples = blogs.stream()
+                        .map(blog -> new DefaultTypedTuple<>(blog.getId().toString(),
+                                blog.getLiked() == null ? 0D : blog.getLiked().doubleValue()))
+                        .collect(Collectors.toSet());
+                stringRedisTemplate.opsForZSet().addIfAbsent(RedisConstants.BLOG_HOT_KEY, tuples);
+            }
+            // 永久标记为已加载
+            stringRedisTemplate.opsForValue().set(RedisConstants.BLOG_HOT_INIT_KEY, HOT_INIT_DONE);
+            log.info("热门排行榜初始化完成: {} 个博客", blogs.size());
+        } catch (Exception e) {
+            log.error("热门排行榜初始化失败", e);
+        }
+    }
+
+    /**
+     * 每小时维护一次热门排行榜：按半衰期整体衰减热度（ZUNIONSTORE WEIGHTS），并只保留前 maxSize 名
+     */
+    private void maintainHotBlogs() {
+        try {
+            // 每小时只由一个节点执行，避免重复衰减
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(RedisConstants.BLOG_HOT_DECAY_KEY, "1", 55, TimeUnit.MINUTES);
+            if (!Boolean.TRUE.equals(first)) {
+                return;
+            }
+            if (hotHalfLifeHours > 0) {
+                double factor = Math.pow(0.5, 1 / hotHalfLifeHours);
+                stringRedisTemplate.opsForZSet().unionAndStore(RedisConstants.BLOG_HOT_KEY, Collections.emptyList(),
+                        RedisConstants.BLOG_HOT_KEY, RedisZSetCommands.Aggregate.SUM, RedisZSetCommands.Weights.of(factor));
+            }
+            stringRedisTemplate.opsForZSet().removeRange(RedisConstants.BLOG_HOT_KEY, 0, -hotMaxSize - 1);
+        } catch (Exception e) {
+            log.error("热门排行榜维护失败", e);
+        }
     }
 
     /**
      * 启动初始化同步任务
      */
     private void startInitialSync() {
-        SCHEDULED_EXECUTOR.submit(() -> {
+        MAINTENANCE_EXECUTOR.submit(() -> {
             try {
                 log.info("开始执行初始化点赞数据同步...");
                 syncLikeCountBetweenRedisAndDb();
@@ -119,14 +283,89 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      * 启动定时同步任务
      */
     private void startScheduledSync() {
-        // 初始延迟1分钟，之后每分钟执行一次
-        SCHEDULED_EXECUTOR.scheduleAtFixedRate(
+        // 增量刷新负责日常同步，这里只做兜底的全量对账
+        MAINTENANCE_EXECUTOR.scheduleAtFixedRate(
                 this::scheduledSyncTask,
-                1,
-                1,
+                likeReconcileMinutes,
+                likeReconcileMinutes,
                 TimeUnit.MINUTES
         );
-        log.info("每分钟定时同步任务已启动");
+        log.info("点赞数全量对账任务已启动，间隔 {} 分钟", likeReconcileMinutes);
+    }
+
+    /**
+     * 启动点赞数增量刷新任务
+     */
+    private void startLikeFlush() {
+        SCHEDULED_EXECUTOR.scheduleWithFixedDelay(
+                this::flushDirtyLikeCounts,
+                likeFlushIntervalMillis,
+                likeFlushIntervalMillis,
+                TimeUnit.MILLISECONDS
+        );
+        log.info("点赞数增量刷新任务已启动，间隔 {} 毫秒", likeFlushIntervalMillis);
+    }
+
+    /**
+     * 将点赞数有变化的博客刷回数据库（write-behind）
+     * <p>
+     * blogLiked.lua 把点赞数变化的博客id写入脏集合，这里用SRANDMEMBER分批读取，HMGET读取最新计数，
+     * 每批用一条 UPDATE ... CASE 更新，提交后才从脏集合中移除（likeFlushAck.lua），进程在中途退出时id仍在脏集合中。
+     * 写入的是计数的绝对值，重复刷新和多个节点同时刷新都不影响结果。
+     */
+    private void flushDirtyLikeCounts() {
+        try {
+            // 每次最多处理当前脏集合大小对应的轮数，刷新期间持续有点赞的博客留给下一次
+            Long size = stringRedisTemplate.opsForSet().size(RedisConstants.BLOG_LIKED_DIRTY_KEY);
+            long rounds = size == null ? 0 : size / likeFlushChunkSize + 1;
+            for (long round = 0; round < rounds && running; round++) {
+                // 1.读取一批有变化的博客id（SRANDMEMBER，不移除，数据库更新成功后再移除）
+                Set<String> members = stringRedisTemplate.opsForSet()
+                        .distinctRandomMembers(RedisConstants.BLOG_LIKED_DIRTY_KEY, likeFlushChunkSize);
+                if (CollectionUtils.isEmpty(members)) {
+                    return;
+                }
+                List<String> ids = new ArrayList<>(members);
+                // 2.读取最新点赞数
+                List<Object> counts = stringRedisTemplate.opsForHash()
+                        .multiGet(RedisConstants.BLOG_LIKED_COUNT_KEY, new ArrayList<>(ids));
+                List<Blog> blogs = new ArrayList<>(ids.size());
+                String[] flushed = new String[ids.size() * 2];
+                for (int i = 0; i < ids.size(); i++) {
+                    Object count = counts.get(i);
+                    flushed[2 * i] = ids.get(i);
+                    flushed[2 * i + 1] = count == null ? "" : count.toString();
+                    if (count == null) {
+                        continue;
+                    }
+                    try {
+                        blogs.add(new Blog().setId(Long.valueOf(ids.get(i))).setLiked(Integer.parseInt(count.toString())));
+                    } catch (NumberFormatException e) {
+                        log.warn("解析博客ID或点赞数失败: key={}, value={}", ids.get(i), count);
+                    }
+                }
+                // 3.批量更新，失败时id仍在脏集合中，等待下次重试
+                try {
+                    if (!blogs.isEmpty()) {
+                        getBaseMapper().updateLikedBatch(blogs);
+                    }
+                } catch (Exception e) {
+                    log.error("点赞数刷回数据库失败，{} 个博客等待下次重试", ids.size(), e);
+                    return;
+                }
+                // 4.从脏集合中移除点赞数未再变化的博客
+                stringRedisTemplate.execute(LIKE_FLUSH_ACK_SCRIPT,
+                        Arrays.asList(RedisConstants.BLOG_LIKED_DIRTY_KEY, RedisConstants.BLOG_LIKED_COUNT_KEY),
+                        (Object[]) flushed);
+                log.debug("点赞数刷回数据库: {} 个博客", blogs.size());
+                // 不足一批说明已经取完
+                if (ids.size() < likeFlushChunkSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("点赞数增量刷新异常", e);
+        }
     }
 
     /**
@@ -151,78 +390,98 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     }
 
     /**
-     * 同步Redis和数据库的点赞数量
+     * 同步Redis和数据库的点赞数量（全量对账）
+     * <p>
+     * 用HSCAN分页遍历计数Hash，每页用一次IN查询比较数据库中的点赞数，不一致的用一条 UPDATE ... CASE 修正。
+     * 每页处理完把游标写入Redis作为检查点，服务重启后从检查点继续，遍历完成后删除检查点。
      */
     private void syncLikeCountBetweenRedisAndDb() {
+        // 多个节点共用一个检查点，同一时间只允许一个节点对账
+        RLock lock = redissonClient.getLock(RedisConstants.LOCK_BLOG_LIKE_SYNC_KEY);
+        if (!lock.tryLock()) {
+            log.info("其他节点正在对账点赞数据，跳过本次");
+            return;
+        }
         try {
-            // 1. 获取Redis中的所有点赞计数
-            Map<Object, Object> redisLikeCounts = stringRedisTemplate.opsForHash()
-                    .entries(RedisConstants.BLOG_LIKED_COUNT_KEY);
-
-            if (redisLikeCounts.isEmpty()) {
-                log.info("Redis中暂无点赞计数数据");
-                return;
+            String cursor = stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_LIKED_SYNC_CURSOR_KEY);
+            if (cursor != null) {
+                log.info("从检查点 {} 继续对账点赞数据", cursor);
             }
-
-            log.info("开始同步 {} 个博客的点赞数据", redisLikeCounts.size());
-
+            int scannedCount = 0;
             int updatedCount = 0;
-            int consistentCount = 0;
-
-            // 2. 遍历Redis中的每个博客点赞计数
-            for (Map.Entry<Object, Object> entry : redisLikeCounts.entrySet()) {
-                try {
-                    Long blogId = Long.parseLong(entry.getKey().toString());
-                    int redisLikeCount = Integer.parseInt(entry.getValue().toString());
-
-                    // 3. 查询数据库中的点赞数
-                    Blog blog = getById(blogId);
-                    if (blog == null) {
-                        log.warn("博客ID {} 在数据库中不存在，跳过同步", blogId);
-                        continue;
+            do {
+                // 1. 读取一页点赞计数
+                MapScanCursor<String, String> page = scanLikeCounts(cursor == null ? "0" : cursor);
+                Map<Long, Integer> redisLikeCounts = new HashMap<>(page.getMap().size());
+                page.getMap().forEach((key, value) -> {
+                    try {
+                        redisLikeCounts.put(Long.parseLong(key), Integer.parseInt(value));
+                    } catch (NumberFormatException e) {
+                        log.warn("解析博客ID或点赞数失败: key={}, value={}", key, value);
                     }
-
-                    int dbLikeCount = blog.getLiked();
-
-                    // 4. 比较并同步
-                    if (redisLikeCount != dbLikeCount) {
-                        // 以Redis数据为准，更新数据库
-                        boolean updateSuccess = update()
-                                .set("liked", redisLikeCount)
-                                .eq("id", blogId)
-                                .update();
-
-                        if (updateSuccess) {
-                            updatedCount++;
-                            log.debug("同步成功: 博客ID {} Redis:{} -> 数据库:{}",
-                                    blogId, redisLikeCount, dbLikeCount);
-                        } else {
-                            log.error("同步失败: 博客ID {} 数据库更新失败", blogId);
-                        }
-                    } else {
-                        consistentCount++;
+                });
+                // 2. 与数据库比较，以Redis数据为准
+                if (!redisLikeCounts.isEmpty()) {
+                    List<Blog> mismatched = query().select("id", "liked")
+                            .in("id", redisLikeCounts.keySet())
+                            .list()
+                            .stream()
+                            .filter(blog -> !redisLikeCounts.get(blog.getId()).equals(blog.getLiked()))
+                            .map(blog -> new Blog().setId(blog.getId()).setLiked(redisLikeCounts.get(blog.getId())))
+                            .collect(Collectors.toList());
+                    if (!mismatched.isEmpty()) {
+                        getBaseMapper().updateLikedBatch(mismatched);
+                        updatedCount += mismatched.size();
                     }
-                } catch (NumberFormatException e) {
-                    log.warn("解析博客ID或点赞数失败: key={}, value={}",
-                            entry.getKey(), entry.getValue());
-                } catch (Exception e) {
-                    log.error("处理博客ID {} 时发生异常", entry.getKey(), e);
+                    scannedCount += redisLikeCounts.size();
+                }
+                // 3. 保存检查点
+                cursor = page.isFinished() ? null : page.getCursor();
+                if (cursor != null) {
+                    stringRedisTemplate.opsForValue().set(RedisConstants.BLOG_LIKED_SYNC_CURSOR_KEY, cursor);
                 }
+            } while (cursor != null && running);
+            if (cursor == null) {
+                stringRedisTemplate.delete(RedisConstants.BLOG_LIKED_SYNC_CURSOR_KEY);
             }
-
-            log.info("同步完成: 更新 {} 个博客，{} 个博客数据一致", updatedCount, consistentCount);
-
+            log.info("同步完成: 检查 {} 个博客，更新 {} 个博客", scannedCount, updatedCount);
         } catch (Exception e) {
             log.error("同步点赞数据时发生异常", e);
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * 从指定游标开始HSCAN一页点赞计数
+     * <p>
+     * RedisTemplate的scan只能从0开始，无法从检查点恢复，这里直接使用Lettuce原生命令
+     */
+    @SuppressWarnings("unchecked")
+    private MapScanCursor<String, String> scanLikeCounts(String cursor) {
+        return stringRedisTemplate.execute((RedisCallback<MapScanCursor<String, String>>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands =
+                    (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            MapScanCursor<byte[], byte[]> raw = LettuceFutures.awaitOrCancel(
+                    commands.hscan(RedisConstants.BLOG_LIKED_COUNT_KEY.getBytes(StandardCharsets.UTF_8),
+                            ScanCursor.of(cursor), ScanArgs.Builder.limit(likeSyncPageSize)),
+                    likeSyncTimeoutMillis, TimeUnit.MILLISECONDS);
+            MapScanCursor<String, String> page = new MapScanCursor<>();
+            page.setCursor(raw.getCursor());
+            page.setFinished(raw.isFinished());
+            raw.getMap().forEach((k, v) -> page.getMap().put(new String(k, StandardCharsets.UTF_8), new String(v, StandardCharsets.UTF_8)));
+            return page;
+        });
+    }
+
     @PreDestroy
     private void destroy() {
         log.info("开始关闭定时任务服务...");
         running = false;
         // 优雅关闭线程池
         shutdownExecutor(SCHEDULED_EXECUTOR, "定时任务");
+        shutdownExecutor(MAINTENANCE_EXECUTOR, "对账整理");
+        shutdownExecutor(fanoutExecutor, "博客推送");
         log.info("所有服务已关闭");
     }
 
@@ -251,18 +510,19 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.setRealTimeLikeInfo(blog);
-            // this.isBlogLiked(blog);
-        });
+        // 从热门排行榜分页 ZREVRANGE key start end
+        long start = (long) (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        Set<String> hotIds = stringRedisTemplate.opsForZSet()
+                .reverseRange(RedisConstants.BLOG_HOT_KEY, start, start + SystemConstants.MAX_PAGE_SIZE - 1);
+        if (hotIds == null || hotIds.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 按排行榜顺序查询博客，已删除的博客跳过
+        List<Long> ids = hotIds.stream().map(Long::valueOf).toList();
+        Map<Long, Blog> blogMap = listByIds(ids).stream().collect(Collectors.toMap(Blog::getId, blog -> blog));
+        List<Blog> records = ids.stream().map(blogMap::get).filter(Objects::nonNull).collect(Collectors.toList());
+        // 批量查询用户、点赞数和点赞状态
+        hydrateBlogs(records);
         return Result.ok(records);
     }
 
@@ -273,34 +533,53 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (ObjectUtils.isEmpty(blog)) {
             return Result.fail("笔记不存在！");
         }
-        // 2.查询blog有关的用户
-        queryBlogUser(blog);
-        // 2.1 从redis中获取实时点赞数量
-        setRealTimeLikeInfo(blog);
-        // 3.查询blog是否被点赞
-        // isBlogLiked(blog);
+        // 2.查询blog有关的用户、实时点赞数量和点赞状态
+        hydrateBlogs(Collections.singletonList(blog));
         return Result.ok(blog);
     }
 
-    private void setRealTimeLikeInfo(Blog blog) {
-        String blogLikedKey = RedisConstants.BLOG_LIKED_KEY + blog.getId();
-        String blogLikeCountKey = RedisConstants.BLOG_LIKED_COUNT_KEY;
-
-        // 1. 获取实时点赞数量（优先从计数器获取）
-        Object likeCountObj = stringRedisTemplate.opsForHash().get(blogLikeCountKey, blog.getId().toString());
-        Integer likeCount = likeCountObj != null ? Integer.parseInt((String) likeCountObj) : null;
-
-        blog.setLiked(likeCount);// 覆盖数据库的旧数据
-
-        // 2. 获取当前用户点赞状态
+    /**
+     * 批量填充一页博客的作者信息、实时点赞数和当前用户的点赞状态
+     * <p>
+     * 作者一次批量查询；点赞数（HMGET）和点赞状态（每篇一个ZSCORE）放在同一个管道中，
+     * 一页博客固定两次往返，与博客数量无关
+     */
+    private void hydrateBlogs(List<Blog> blogs) {
+        if (CollectionUtils.isEmpty(blogs)) {
+            return;
+        }
+        // 1. 批量查询作者
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, User> users = userProfileCache.getAll(userIds);
+        // 2. 管道：实时点赞数 + 当前用户点赞状态
         UserDTO user = UserHolder.getUser();
-        if (user != null) {
-            Long userId = user.getId();
-            Double score = stringRedisTemplate.opsForZSet().score(blogLikedKey, userId.toString());
-            blog.setIsLike(score != null);
-        } else {
+        String[] blogIds = blogs.stream().map(blog -> blog.getId().toString()).toArray(String[]::new);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hMGet(RedisConstants.BLOG_LIKED_COUNT_KEY, blogIds);
+            if (user != null) {
+                for (String blogId : blogIds) {
+                    conn.zScore(RedisConstants.BLOG_LIKED_KEY + blogId, user.getId().toString());
+                }
+            }
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        List<String> likeCounts = (List<String>) results.get(0);
+        for (int i = 0; i < blogs.size(); i++) {
+            Blog blog = blogs.get(i);
+            User author = users.get(blog.getUserId());
+            if (author != null) {
+                blog.setName(author.getNickName());
+                blog.setIcon(author.getIcon());
+            }
+            // 覆盖数据库的旧数据，计数器中没有时保留数据库的值
+            String likeCount = likeCounts.get(i);
+            if (likeCount != null) {
+                blog.setLiked(Integer.parseInt(likeCount));
+            }
             // 用户未登录，设置为未点赞状态
-            blog.setIsLike(false);
+            blog.setIsLike(user != null && results.get(i + 1) != null);
         }
     }
 
@@ -323,14 +602,16 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 1.1获取缓存key
         String blogLikedKey = RedisConstants.BLOG_LIKED_KEY + id;
         String blogLikeCountKey = RedisConstants.BLOG_LIKED_COUNT_KEY; // 新增计数器key
+        String blogLikeDirtyKey = RedisConstants.BLOG_LIKED_DIRTY_KEY; // 点赞数变化的博客集合
         for (int attempt = 1; attempt <= MAX_RETRY_TIMES; attempt++) {
             try {
                 Long result = stringRedisTemplate.execute(
                         BLOG_LIKED_SCRIPT,
-                        Arrays.asList(blogLikedKey, blogLikeCountKey),
+                        Arrays.asList(blogLikedKey, blogLikeCountKey, blogLikeDirtyKey, RedisConstants.BLOG_HOT_KEY),
                         userId.toString(),
                         id.toString(),
-                        String.valueOf(System.currentTimeMillis())
+                        String.valueOf(System.currentTimeMillis()),
+                        hotHalfLifeHours > 0 ? "1" : "0"
                 );
                 // 检查null
                 if (result == null) {
@@ -389,9 +670,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
         // 2.解析出其中用户ids
         List<Long> ids = top5.stream().map(Long::parseLong).toList();
-        String idsStr = StringUtils.join(ids, ",");
-        // 3.根据用户id查询用户
-        List<UserVO> userVOList = userMapper.selectByids(ids, idsStr).stream().map(user -> userVOMapper.entityToUserVO(user)).toList();
+        // 3.根据用户id查询用户（按点赞顺序）
+        List<UserVO> userVOList = userProfileCache.listByIds(ids).stream().map(user -> userVOMapper.entityToUserVO(user)).toList();
         // 4.返回
         return Result.ok(userVOList);
     }
@@ -408,78 +688,374 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (!save) {
             return Result.fail("发布失败");
         }
-        // 查询所有博客主的所有粉丝
-        List<Long> fansIdList = Objects.requireNonNull(stringRedisTemplate.opsForSet().members(RedisConstants.BLOG_FANS_KEY + user.getId())).stream().map(Long::parseLong).toList();
-        if (fansIdList.isEmpty()){
-            log.warn("该用户没有粉丝!博客id：{}", blog.getId().toString());
-            return Result.ok("该用户没有粉丝!博客id："+blog.getId().toString());
-        }
-        fansIdList.forEach(fansId -> {
-            // 把博文推送给粉丝 (粉丝 -> 博客id)
-            stringRedisTemplate.opsForZSet().add(RedisConstants.FEED_KEY + fansId, blog.getId().toString(), System.currentTimeMillis());
-            // ✅ 每次推送都刷新 feed 的 TTL（比如 60 天）
-            stringRedisTemplate.expire(RedisConstants.FEED_KEY + fansId, Duration.ofDays(60));
+        // 新博客进入热门排行榜（热度为0）
+        stringRedisTemplate.opsForZSet().addIfAbsent(RedisConstants.BLOG_HOT_KEY, blog.getId().toString(), 0);
+        // 后台推送给所有粉丝，发布请求不等待推送完成
+        long publishTime = System.currentTimeMillis();
+        Long blogId = blog.getId();
+        Long authorId = user.getId();
+        // 写入作者发件箱，大V的粉丝读取时从这里拉取；发件箱与收件箱一样只保留最新的 inbox-max-size 条
+        String outboxKey = RedisConstants.BLOG_OUTBOX_KEY + authorId;
+        String progressKey = RedisConstants.BLOG_FANOUT_PROGRESS_KEY + blogId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.zAdd(outboxKey, publishTime, blogId.toString());
+            conn.zRemRange(outboxKey, 0, -feedInboxMaxSize - 1);
+            conn.hSet(progressKey, "status", FANOUT_RUNNING);
+            conn.expire(progressKey, Duration.ofDays(1).getSeconds());
+            // 推送任务写入stream，由消费者线程执行，发布请求只多一次XADD
+            Map<String, String> task = new HashMap<>(4);
+            task.put("blogId", blogId.toString());
+            task.put("authorId", authorId.toString());
+            task.put("publishTime", String.valueOf(publishTime));
+            conn.xAdd(FANOUT_QUEUE_NAME, task);
+            return null;
         });
-        // 同时记录：博客id 被推给了谁 (博客id -> 多少粉丝id)
-        String[] fanIdStrs = fansIdList.stream().map(String::valueOf).toArray(String[]::new);
-        stringRedisTemplate.opsForSet().add(RedisConstants.BLOG_PUSH_FANS_KEY + blog.getId(), fanIdStrs);
-        // ✅ 反向索引 TTL 设置短一些（7 天足够）
-        stringRedisTemplate.expire(RedisConstants.BLOG_PUSH_FANS_KEY + blog.getId(), Duration.ofDays(7));
         // 返回id
-        return Result.ok(blog.getId());
+        return Result.ok(blogId);
+    }
+
+    /**
+     * 创建推送消费者组并启动消费者线程
+     */
+    private void startFanoutConsumers() {
+        // 创建消费者组（XGROUP CREATE stream.blog.fanout g1 0 MKSTREAM），已存在时忽略
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.streamCommands()
+                    .xGroupCreate(FANOUT_QUEUE_NAME.getBytes(StandardCharsets.UTF_8), FANOUT_GROUP_NAME, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            log.debug("博客推送消费者组已存在: {}", e.getMessage());
+        }
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        fanoutExecutor = Executors.newFixedThreadPool(fanoutConsumers, r -> {
+            Thread t = new Thread(r, "blog-fanout-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 1; i <= fanoutConsumers; i++) {
+            fanoutExecutor.submit(new FanoutHandler("c" + i));
+        }
+        log.info("博客推送消费者已启动: consumers={}", fanoutConsumers);
+    }
+
+    private class FanoutHandler implements Runnable {
+        // 消费者名称，同一个组内各线程不同，重启后按名称继续处理自己的pending-list
+        private final String consumerName;
+
+        FanoutHandler(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
+        @Override
+        public void run() {
+            // 启动时先处理上次未完成的推送
+            handlePendingList();
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    // 1.获取推送任务 XREADGROUP GROUP g1 cN COUNT 1 BLOCK 2000 STREAMS stream.blog.fanout >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(FANOUT_GROUP_NAME, consumerName),
+                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(FANOUT_QUEUE_NAME, ReadOffset.lastConsumed())
+                    );
+                    if (CollectionUtils.isEmpty(list)) {
+                        continue;
+                    }
+                    // 2.推送并ACK
+                    handleTask(list.get(0));
+                } catch (Exception e) {
+                    // 推送失败时任务留在pending-list中重试
+                    log.error("博客推送任务处理异常, consumer={}", consumerName, e);
+                    if (running && !Thread.currentThread().isInterrupted()) {
+                        handlePendingList();
+                    }
+                }
+            }
+        }
+
+        private void handlePendingList() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    // XREADGROUP GROUP g1 cN COUNT 1 STREAMS stream.blog.fanout 0
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(FANOUT_GROUP_NAME, consumerName),
+                            StreamReadOptions.empty().count(1),
+                            StreamOffset.create(FANOUT_QUEUE_NAME, ReadOffset.from("0"))
+                    );
+                    if (CollectionUtils.isEmpty(list)) {
+                        break;
+                    }
+                    handleTask(list.get(0));
+                } catch (Exception e) {
+                    log.error("处理博客推送pending-list异常, consumer={}", consumerName, e);
+                    if (!running || Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException interruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        private void handleTask(MapRecord<String, Object, Object> record) {
+            Map<Object, Object> task = record.getValue();
+            fanoutBlog(Long.valueOf(task.get("blogId").toString()), Long.valueOf(task.get("authorId").toString()),
+                    Long.parseLong(task.get("publishTime").toString()));
+            // 推送完成后确认并删除任务 XACK + XDEL
+            stringRedisTemplate.opsForStream().acknowledge(FANOUT_QUEUE_NAME, FANOUT_GROUP_NAME, record.getId());
+            stringRedisTemplate.opsForStream().delete(FANOUT_QUEUE_NAME, record.getId());
+        }
+    }
+
+    /**
+     * 把博客推送到所有粉丝的收件箱
+     * <p>
+     * 推送是幂等的（ZADD同一个分数、SADD反向索引），任务重放时重新统计进度；失败时抛出异常，任务留在pending-list中重试
+     * <p>
+     * SSCAN分批读取粉丝，每批在一个管道中完成 ZADD + EXPIRE 收件箱、记录推送反向索引和更新进度，
+     * 十万粉丝约两百次往返，而不是二十万次
+     */
+    private void fanoutBlog(Long blogId, Long authorId, long publishTime) {
+        String progressKey = RedisConstants.BLOG_FANOUT_PROGRESS_KEY + blogId;
+        String pushFansKey = RedisConstants.BLOG_PUSH_FANS_KEY + blogId;
+        String blogIdStr = blogId.toString();
+        long feedTtl = Duration.ofDays(60).getSeconds();
+        long pushFansTtl = Duration.ofDays(7).getSeconds();
+        try {
+            // 1.记录总数，重放时进度从0开始
+            Long total = stringRedisTemplate.opsForSet().size(RedisConstants.BLOG_FANS_KEY + authorId);
+            Map<String, String> progress = new HashMap<>(4);
+            progress.put("status", FANOUT_RUNNING);
+            progress.put("total", String.valueOf(total == null ? 0 : total));
+            progress.put("pushed", "0");
+            stringRedisTemplate.opsForHash().putAll(progressKey, progress);
+            if (total == null || total == 0) {
+                log.warn("该用户没有粉丝!博客id：{}", blogIdStr);
+            }
+            // 1.1粉丝数超过阈值：只写发件箱（已写入），不再推送。大V标记不会撤销，保证发件箱中的历史博客始终可见
+            if (total != null && total > feedPushThreshold) {
+                stringRedisTemplate.opsForSet().add(RedisConstants.BLOG_BIG_AUTHOR_KEY, authorId.toString());
+                stringRedisTemplate.opsForHash().put(progressKey, "status", FANOUT_DONE);
+                log.info("作者 {} 粉丝数 {} 超过阈值，博客 {} 只写入发件箱", authorId, total, blogIdStr);
+                return;
+            }
+            // 2.分批推送
+            List<String> chunk = new ArrayList<>(fanoutChunkSize);
+            try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(RedisConstants.BLOG_FANS_KEY + authorId,
+                    ScanOptions.scanOptions().count(fanoutChunkSize).build())) {
+                while (cursor.hasNext()) {
+                    chunk.add(cursor.next());
+                    if (chunk.size() >= fanoutChunkSize) {
+                        pushChunk(chunk, blogIdStr, publishTime, feedTtl, pushFansKey, pushFansTtl, progressKey);
+                        chunk.clear();
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pushChunk(chunk, blogIdStr, publishTime, feedTtl, pushFansKey, pushFansTtl, progressKey);
+            }
+            stringRedisTemplate.opsForHash().put(progressKey, "status", FANOUT_DONE);
+        } catch (RuntimeException e) {
+            log.error("博客推送粉丝失败，博客id：{}", blogIdStr, e);
+            try {
+                stringRedisTemplate.opsForHash().put(progressKey, "status", FANOUT_FAILED);
+            } catch (RuntimeException ignored) {
+                // Redis不可用时无法记录状态，任务重试时会重新写入
+            }
+            throw e;
+        }
+    }
+
+    private void pushChunk(List<String> fansIds, String blogId, long publishTime, long feedTtl,
+                           String pushFansKey, long pushFansTtl, String progressKey) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String fansId : fansIds) {
+                // 把博文推送给粉丝 (粉丝 -> 博客id)，并刷新 feed 的 TTL（60 天）
+                conn.zAdd(RedisConstants.FEED_KEY + fansId, publishTime, blogId);
+                // 只保留最新的 inboxMaxSize 条
+                conn.zRemRange(RedisConstants.FEED_KEY + fansId, 0, -feedInboxMaxSize - 1);
+                conn.expire(RedisConstants.FEED_KEY + fansId, feedTtl);
+            }
+            // 同时记录：博客id 被推给了谁，反向索引 TTL 7 天
+            conn.sAdd(pushFansKey, fansIds.toArray(new String[0]));
+            conn.expire(pushFansKey, pushFansTtl);
+            conn.hIncrBy(progressKey, "pushed", fansIds.size());
+            return null;
+        });
+    }
+
+    /**
+     * 查询关注页的一页数据（推拉结合）
+     * <p>
+     * 数据源为自己的收件箱和关注的大V的发件箱。每个源在一个管道中各取前 offset + count 条，
+     * 按 (时间戳降序, 博客id字典序降序) 归并，与单个ZSET的 ZREVRANGEBYSCORE 顺序一致，
+     * 因此 minTime/offset 的滚动分页语义不变。作者成为大V前推送过的博客可能同时出现在收件箱和发件箱中，归并时去重。
+     */
+    private List<ZSetOperations.TypedTuple<String>> queryFeedPage(Long userId, Long max, Integer offset) {
+        // 1.数据源
+        List<String> sources = new ArrayList<>();
+        sources.add(RedisConstants.FEED_KEY + userId);
+        Set<String> bigAuthors = stringRedisTemplate.opsForSet()
+                .intersect(RedisConstants.FOLLOW_KEY + userId, RedisConstants.BLOG_BIG_AUTHOR_KEY);
+        if (bigAuthors != null) {
+            bigAuthors.forEach(authorId -> sources.add(RedisConstants.BLOG_OUTBOX_KEY + authorId));
+        }
+        // 2.每个源取前 offset + count 条：全局前N条一定在各自源的前N条之内
+        long limit = (long) offset + FEED_PAGE_SIZE;
+        List<Object> pages = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            sources.forEach(source -> conn.zRevRangeByScoreWithScores(source, 0, max, 0, limit));
+            return null;
+        });
+        // 3.多路归并
+        List<Set<ZSetOperations.TypedTuple<String>>> sourcePages = new ArrayList<>(pages.size());
+        for (Object page : pages) {
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) page;
+            sourcePages.add(tuples);
+        }
+        return FeedMerger.merge(sourcePages, offset, FEED_PAGE_SIZE);
+    }
+
+    /**
+     * 整理收件箱：SCAN遍历所有收件箱，管道批量ZCARD，超过上限的裁剪到最新的 inboxMaxSize 条，同时统计大小分布。
+     * 推送时已经裁剪，这里处理历史数据和推送失败遗留的超限收件箱
+     */
+    private void compactFeedInboxes() {
+        try {
+            // 同一周期只由一个节点执行
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(RedisConstants.FEED_COMPACT_LOCK_KEY, "1",
+                    Math.max(feedCompactIntervalMinutes - 1, 1), TimeUnit.MINUTES);
+            if (!Boolean.TRUE.equals(first)) {
+                return;
+            }
+            long[] counts = new long[FEED_SIZE_BUCKETS.length + 1];
+            long[] totals = new long[4]; // 收件箱数、博客总数、裁剪的收件箱数、裁剪的博客数
+            long[] maxSize = {0};
+            ScanOptions options = ScanOptions.scanOptions().match(RedisConstants.FEED_KEY + "*").count(1000).build();
+            List<String> batch = new ArrayList<>(500);
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                    while (cursor.hasNext() && running) {
+                        batch.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                        if (batch.size() >= 500 || !cursor.hasNext()) {
+                            compactInboxBatch(batch, counts, totals, maxSize);
+                            batch.clear();
+                        }
+                    }
+                }
+                return null;
+            });
+            // 保存统计结果
+            FeedInboxMetricsDTO metrics = new FeedInboxMetricsDTO();
+            metrics.setInboxes(totals[0]);
+            metrics.setEntries(totals[1]);
+            metrics.setTrimmedInboxes(totals[2]);
+            metrics.setTrimmedEntries(totals[3]);
+            metrics.setMaxSize(maxSize[0]);
+            Map<String, Long> distribution = new LinkedHashMap<>();
+            for (int i = 0; i < FEED_SIZE_BUCKETS.length; i++) {
+                distribution.put("<=" + FEED_SIZE_BUCKETS[i], counts[i]);
+            }
+            distribution.put(">" + FEED_SIZE_BUCKETS[FEED_SIZE_BUCKETS.length - 1], counts[FEED_SIZE_BUCKETS.length]);
+            metrics.setDistribution(distribution);
+            metrics.setFinishedAt(LocalDateTime.now());
+            stringRedisTemplate.opsForValue().set(RedisConstants.FEED_METRICS_KEY, JSONUtil.toJsonStr(metrics));
+            log.info("收件箱整理完成: {} 个收件箱，{} 条博客，裁剪 {} 个收件箱 {} 条博客",
+                    totals[0], totals[1], totals[2], totals[3]);
+        } catch (Exception e) {
+            log.error("收件箱整理失败", e);
+        }
+    }
+
+    private void compactInboxBatch(List<String> keys, long[] counts, long[] totals, long[] maxSize) {
+        // 1.批量查询大小
+        List<Object> sizes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            keys.forEach(conn::zCard);
+            return null;
+        });
+        // 2.统计，记录需要裁剪的收件箱
+        List<String> oversized = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            long size = sizes.get(i) == null ? 0 : (Long) sizes.get(i);
+            if (size > feedInboxMaxSize) {
+                oversized.add(keys.get(i));
+                totals[2]++;
+                totals[3] += size - feedInboxMaxSize;
+                size = feedInboxMaxSize;
+            }
+            int bucket = 0;
+            while (bucket < FEED_SIZE_BUCKETS.length && size > FEED_SIZE_BUCKETS[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            totals[0]++;
+            totals[1] += size;
+            maxSize[0] = Math.max(maxSize[0], size);
+        }
+        // 3.批量裁剪
+        if (!oversized.isEmpty()) {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                oversized.forEach(key -> conn.zRemRange(key, 0, -feedInboxMaxSize - 1));
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public Result queryFeedMetrics() {
+        String json = stringRedisTemplate.opsForValue().get(RedisConstants.FEED_METRICS_KEY);
+        if (StringUtils.isBlank(json)) {
+            return Result.fail("收件箱尚未统计");
+        }
+        return Result.ok(JSONUtil.toBean(json, FeedInboxMetricsDTO.class));
+    }
+
+    @Override
+    public Result queryFanoutProgress(Long id) {
+        Map<Object, Object> progress = stringRedisTemplate.opsForHash().entries(RedisConstants.BLOG_FANOUT_PROGRESS_KEY + id);
+        if (progress.isEmpty()) {
+            return Result.fail("推送记录不存在或已过期");
+        }
+        BlogFanoutProgressDTO dto = new BlogFanoutProgressDTO();
+        dto.setBlogId(id);
+        dto.setStatus((String) progress.get("status"));
+        dto.setTotal(progress.get("total") == null ? null : Long.valueOf(progress.get("total").toString()));
+        dto.setPushed(progress.get("pushed") == null ? 0L : Long.valueOf(progress.get("pushed").toString()));
+        return Result.ok(dto);
     }
 
     @Override
     public Result queryBlogOfFollow(Long max, Integer offset) {
         // 1.获取当前用户
         Long userId = UserHolder.getUser().getId();
-        // 2.查取收件箱 ZREVRANGE key Max Min LIMIT offset COUNT
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet().reverseRangeByScoreWithScores(RedisConstants.FEED_KEY + userId, 0, max, offset, 2);
+        // 2.查取收件箱和关注的大V发件箱，多路归并 ZREVRANGEBYSCORE key Max Min LIMIT offset COUNT
+        List<ZSetOperations.TypedTuple<String>> typedTuples = queryFeedPage(userId, max, offset);
         // 3.非空判断
         if (typedTuples == null || typedTuples.isEmpty()){
             return Result.ok("您关注的博主暂无消息！");
         }
         // 4.解析数据：blogId, minTime(时间戳), offset
         List<Long> ids = new ArrayList<>(typedTuples.size());
-        // 最后时间戳
-        long minTime = 0;
-        // 起始个数
-        int ofs = 1;
         for (ZSetOperations.TypedTuple<String> typedTuple : typedTuples) {
-            // 获取blogId
             ids.add(Long.valueOf(Objects.requireNonNull(typedTuple.getValue())));
-            // 获取时间戳
-            long time = Objects.requireNonNull(typedTuple.getScore()).longValue();
-            if (time == minTime){
-                ofs++;
-            }else {
-                minTime = time;
-                ofs = 1;
-            }
         }
+        ScrollResult<Blog> blogScrollResult = FeedMerger.nextCursor(typedTuples, max, offset);
         // 5.根据id查询blog
         String idStr = StringUtils.join(ids, ",");
         List<Blog> blogList = query().in("id", ids).last("order by field(id," + idStr + ")").list();
-        blogList.forEach(blog -> {
-            // 2.查询blog有关的用户
-            queryBlogUser(blog);
-            // 2.1 从redis中获取实时点赞数量
-            setRealTimeLikeInfo(blog);
-        });
+        // 5.1批量查询blog有关的用户、实时点赞数量和点赞状态
+        hydrateBlogs(blogList);
 
-        ScrollResult<Blog> blogScrollResult = new ScrollResult<>();
         blogScrollResult.setList(blogList);
-        blogScrollResult.setMinTime(minTime);
-        blogScrollResult.setOffset(ofs);
         // 6.封装并返回
         return Result.ok(blogScrollResult);
     }
 
-
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
-    }
 }
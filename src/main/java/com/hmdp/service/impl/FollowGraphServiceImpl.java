@@ -0,0 +1,169 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.dto.CursorResult;
+import com.hmdp.entity.User;
+import com.hmdp.service.IFollowGraphService;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.UserProfileCache;
+import com.hmdp.vo.FollowUserVO;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 关注关系图服务
+ * <p>
+ * 关注状态用SMISMEMBER批量查询；共同关注用SINTERCARD统计总数，SSCAN较小的集合并用SMISMEMBER过滤另一个集合来分页，
+ * 不需要一次性生成完整的交集；用户资料走 UserProfileCache
+ */
+@Slf4j
+@Service
+public class FollowGraphServiceImpl implements IFollowGraphService {
+
+    // 每次分页最多SSCAN的轮数，避免交集很稀疏时一直扫描
+    private static final int MAX_SCAN_ROUNDS = 10;
+    private static final long SCAN_TIMEOUT_MILLIS = 3000;
+
+    private static final DefaultRedisScript<Long> SINTERCARD_SCRIPT;
+
+    static {
+        SINTERCARD_SCRIPT = new DefaultRedisScript<>();
+        SINTERCARD_SCRIPT.setLocation(new ClassPathResource("sintercard.lua"));
+        SINTERCARD_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private UserProfileCache userProfileCache;
+
+    @Override
+    public Map<Long, Boolean> isFollowing(Long userId, Collection<Long> targetIds) {
+        if (userId == null || targetIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Object[] members = targetIds.stream().map(String::valueOf).toArray();
+        Map<Object, Boolean> flags = stringRedisTemplate.opsForSet().isMember(RedisConstants.FOLLOW_KEY + userId, members);
+        Map<Long, Boolean> result = new HashMap<>(targetIds.size());
+        targetIds.forEach(id -> result.put(id, flags != null && Boolean.TRUE.equals(flags.get(String.valueOf(id)))));
+        return result;
+    }
+
+    @Override
+    public CursorResult<FollowUserVO> commonFollows(Long userId, Long otherId, String cursor, int count) {
+        String userKey = RedisConstants.FOLLOW_KEY + userId;
+        String otherKey = RedisConstants.FOLLOW_KEY + otherId;
+        // 1.游标格式：被扫描的用户id:SSCAN游标，首页扫描较小的集合
+        Long scanUserId;
+        String scanCursor;
+        if (cursor == null || "0".equals(cursor)) {
+            List<Object> sizes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.sCard(userKey);
+                conn.sCard(otherKey);
+                return null;
+            });
+            scanUserId = (Long) sizes.get(0) <= (Long) sizes.get(1) ? userId : otherId;
+            scanCursor = "0";
+        } else {
+            int split = cursor.indexOf(':');
+            scanUserId = Long.valueOf(cursor.substring(0, split));
+            scanCursor = cursor.substring(split + 1);
+        }
+        String scanKey = RedisConstants.FOLLOW_KEY + scanUserId;
+        String probeKey = scanUserId.equals(userId) ? otherKey : userKey;
+        // 2.SSCAN + SMISMEMBER，直到凑满一页或扫描结束
+        List<Long> ids = new ArrayList<>(count);
+        boolean finished = false;
+        for (int round = 0; round < MAX_SCAN_ROUNDS && ids.size() < count && !finished; round++) {
+            ValueScanCursor<String> page = sscan(scanKey, scanCursor, count);
+            scanCursor = page.getCursor();
+            finished = page.isFinished();
+            if (page.getValues().isEmpty()) {
+                continue;
+            }
+            Map<Object, Boolean> flags = stringRedisTemplate.opsForSet().isMember(probeKey, page.getValues().toArray());
+            for (String member : page.getValues()) {
+                if (flags != null && Boolean.TRUE.equals(flags.get(member))) {
+                    ids.add(Long.valueOf(member));
+                }
+            }
+        }
+        // 3.封装
+        CursorResult<FollowUserVO> result = new CursorResult<>();
+        result.setList(hydrate(userId, ids));
+        result.setCursor(finished ? null : scanUserId + ":" + scanCursor);
+        result.setTotal(countCommon(userKey, otherKey));
+        return result;
+    }
+
+    @Override
+    public List<FollowUserVO> hydrate(Long viewerId, List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 用户资料（本地缓存 -> Redis -> 数据库）和关注状态（一次SMISMEMBER）
+        Map<Long, User> users = userProfileCache.getAll(userIds);
+        Map<Long, Boolean> following = viewerId == null ? Collections.emptyMap() : isFollowing(viewerId, userIds);
+        List<FollowUserVO> list = new ArrayList<>(userIds.size());
+        for (Long id : userIds) {
+            User user = users.get(id);
+            if (user == null) {
+                continue;
+            }
+            FollowUserVO vo = new FollowUserVO();
+            vo.setId(user.getId());
+            vo.setNickName(user.getNickName());
+            vo.setIcon(user.getIcon());
+            vo.setIsFollow(Boolean.TRUE.equals(following.get(id)));
+            list.add(vo);
+        }
+        return list;
+    }
+
+    /**
+     * 共同关注总数，SINTERCARD需要Redis 7.0，低版本返回null
+     */
+    private Long countCommon(String userKey, String otherKey) {
+        try {
+            return stringRedisTemplate.execute(SINTERCARD_SCRIPT, Arrays.asList(userKey, otherKey));
+        } catch (Exception e) {
+            log.debug("SINTERCARD执行失败，不返回共同关注总数: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从指定游标开始SSCAN一页（RedisTemplate的scan只能从0开始，这里直接使用Lettuce原生命令）
+     */
+    @SuppressWarnings("unchecked")
+    private ValueScanCursor<String> sscan(String key, String cursor, int count) {
+        return stringRedisTemplate.execute((RedisCallback<ValueScanCursor<String>>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands =
+                    (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            ValueScanCursor<byte[]> raw = LettuceFutures.awaitOrCancel(
+                    commands.sscan(key.getBytes(StandardCharsets.UTF_8), ScanCursor.of(cursor), ScanArgs.Builder.limit(count)),
+                    SCAN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            ValueScanCursor<String> page = new ValueScanCursor<>();
+            page.setCursor(raw.getCursor());
+            page.setFinished(raw.isFinished());
+            raw.getValues().forEach(v -> page.getValues().add(new String(v, StandardCharsets.UTF_8)));
+            return page;
+        });
+    }
+}
@@ -1,40 +1,49 @@
 package com.hmdp.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.conditions.query.LambdaQueryChainWrapper;
 import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Follow;
-import com.hmdp.exception.FollowBusinessException;
 import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IUserService;
+import com.hmdp.service.IFollowGraphService;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserProfileCache;
 import com.hmdp.vo.UserVO;
 import com.hmdp.vo.mapper.UserVOMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.BooleanUtils;
+import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.io.Serializable;
 import java.lang.reflect.Array;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.CompletableFuture;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -56,14 +65,36 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private IUserService userService;
+    private UserProfileCache userProfileCache;
 
     @Resource
     private UserVOMapper userVOMapper;
 
+    @Resource
+    private IFollowGraphService followGraphService;
+
+    // 注入自身代理（事务），消费线程启动时就需要
+    @Lazy
+    @Resource
+    private IFollowService proxy;
+
     private static final DefaultRedisScript<List> FOLLOW_SCRIPT;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    // 关注事件消息队列及消费者组，关注关系的数据库写入由集群中唯一的消费者（持有LOCK_FOLLOW_CONSUMER_KEY）按顺序批量执行
+    private static final String QUEUE_NAME = "stream.follows";
+    private static final String GROUP_NAME = "g1";
+    private static final String CONSUMER_NAME = "c1";
+
+    // 每次XREADGROUP读取的最大消息数
+    @Value("${hmdp.follow.outbox.batch-size:200}")
+    private int batchSize;
+
+    // stream.follows中未写入数据库的最大消息数，超过后拒绝关注/取关
+    @Value("${hmdp.follow.outbox.max-backlog:100000}")
+    private long maxBacklog;
+
+    private ExecutorService followEventExecutor;
+    private volatile boolean running = true;
 
     // shift + f6 同时修改变量
     static {
@@ -72,6 +103,39 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
         FOLLOW_SCRIPT.setResultType(List.class);
     }
 
+    @PostConstruct
+    private void init() {
+        // 创建消费者组（XGROUP CREATE stream.follows g1 0 MKSTREAM），已存在时忽略
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(QUEUE_NAME.getBytes(StandardCharsets.UTF_8), GROUP_NAME, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            log.debug("关注事件消费者组已存在: {}", e.getMessage());
+        }
+        followEventExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "follow-event");
+            t.setDaemon(true);
+            return t;
+        });
+        followEventExecutor.submit(new FollowEventHandler());
+        log.info("关注事件消费者已启动: batchSize={}, maxBacklog={}", batchSize, maxBacklog);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        followEventExecutor.shutdown();
+        try {
+            // 正在写入的批次最多等待5秒，未确认的消息下次启动时重放
+            if (!followEventExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                followEventExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            followEventExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public Result follow(Long followUserId, Boolean isFollow) {
         // 获取当前用户id
@@ -87,69 +151,148 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
 
         try {
             // 使用明确的String列表
-            List<String> keys = Arrays.asList(followKey, unfollowKey, userBlogKey,blogFansKey);
+            List<String> keys = Arrays.asList(followKey, unfollowKey, userBlogKey, blogFansKey, QUEUE_NAME);
 
             // 确保所有参数都是明确的String类型
             String targetUserIdStr = String.valueOf(followUserId);
             String operationTypeStr = isFollow ? "1" : "0";
             String currentUserIdStr = String.valueOf(userId);
 
-            // 执行Redis操作
-            List<Object> result = stringRedisTemplate.execute(FOLLOW_SCRIPT, keys, targetUserIdStr, operationTypeStr, currentUserIdStr);
-            // 等待Redis操作完成并获取结果
+            // 执行Redis操作，关注关系变化时在同一个脚本中写入stream.follows，由消费者批量写入数据库
+            List<Object> result = stringRedisTemplate.execute(FOLLOW_SCRIPT, keys, targetUserIdStr, operationTypeStr,
+                    currentUserIdStr, String.valueOf(maxBacklog));
             if (CollectionUtils.isEmpty(result)) {
                 log.error("执行Redis操作异常:{}", result);
                 return Result.fail("操作失败");
             }
-            // 获取消息结果
+            Long status = (Long) result.get(0);
             String message = result.get(1).toString();
-            // ✅ 在主线程中提前获取代理对象
-            IFollowService iFollowServiceProxy = (IFollowService) AopContext.currentProxy();
-            // 异步执行数据库操作
-            CompletableFuture.runAsync(() -> {
-                try {
-                    iFollowServiceProxy.addOrRemoveResult(followUserId, result, userId);
-                } catch (Exception e) {
-                    log.error("数据库异步操作执行失败: userId={}, followUserId={}", userId, followUserId, e);
-                }
-            }, CACHE_REBUILD_EXECUTOR);
-            return Result.ok(message);
+            // -3：数据库写入积压过多，拒绝本次操作
+            return status == -3 ? Result.fail(message) : Result.ok(message);
         } catch (Exception e) {
             log.error("执行关注/取消关注操作失败", e);
             return Result.fail("操作失败");
         }
-
-        // 执行脚本 - 使用可变参数而不是List
-        // List<Object> result = stringRedisTemplate.execute(FOLLOW_SCRIPT, keys, targetUserIdStr, operationTypeStr, currentUserIdStr);
-        // IFollowService iFollowServiceProxy = (IFollowService) AopContext.currentProxy();
-        // return iFollowServiceProxy.addOrRemoveResult(followUserId, result, userId);
     }
 
     @Transactional(rollbackFor = Exception.class)
     @Override
-    public void addOrRemoveResult(Long followUserId, List<Object> result, Long userId) {
-        Long status = (Long) result.get(0);
-        String message = result.get(1).toString();
-        if (status == 2) {
-            // 用户未关注，可以关注
-            Follow follow = new Follow().setUserId(userId).setFollowUserId(followUserId);
-            // 保存数据
-            boolean save = save(follow);
-            if (!save) {
-                throw new FollowBusinessException("执行关注操作异常!");
-            } else {
-                log.info(message);
+    public void applyFollowEvents(List<Follow> follows, List<Follow> pairs) {
+        // 先删除本批涉及的全部用户对，消息重放时不会产生重复的关注记录
+        getBaseMapper().deleteBatch(pairs);
+        if (!follows.isEmpty()) {
+            getBaseMapper().insertBatch(follows);
+        }
+    }
+
+    private class FollowEventHandler implements Runnable {
+
+        @Override
+        public void run() {
+            // 集群中只有持有锁的节点消费，保证关注事件按写入顺序落库；锁由看门狗续期，节点宕机后由其他节点接管
+            RLock lock = redissonClient.getLock(RedisConstants.LOCK_FOLLOW_CONSUMER_KEY);
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    if (!lock.tryLock(5, TimeUnit.SECONDS)) {
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log.error("获取关注事件消费锁异常", e);
+                    continue;
+                }
+                try {
+                    log.info("成为关注事件消费者");
+                    consume(lock);
+                } finally {
+                    if (lock.isHeldByCurrentThread()) {
+                        lock.unlock();
+                    }
+                }
+            }
+        }
+
+        private void consume(RLock lock) {
+            // 所有节点使用同一个消费者名称，接管时上一个持有者未确认的消息都在这个消费者的pending-list中，先按顺序重放
+            handlePendingList();
+            while (running && !Thread.currentThread().isInterrupted() && lock.isHeldByCurrentThread()) {
+                try {
+                    // 1.批量获取关注事件 XREADGROUP GROUP g1 c1 COUNT batchSize BLOCK 2000 STREAMS stream.follows >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(GROUP_NAME, CONSUMER_NAME),
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(QUEUE_NAME, ReadOffset.lastConsumed())
+                    );
+                    if (CollectionUtils.isEmpty(list)) {
+                        continue;
+                    }
+                    // 2.整批写入数据库并ACK
+                    applyAndAck(list);
+                } catch (Exception e) {
+                    // 整批失败时事务已回滚，消息留在pending-list中，逐条重试以隔离异常消息
+                    log.error("批量写入关注事件异常", e);
+                    if (running && !Thread.currentThread().isInterrupted()) {
+                        handlePendingList();
+                    }
+                }
+            }
+        }
+
+        private void handlePendingList() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    // XREADGROUP GROUP g1 c1 COUNT 1 STREAMS stream.follows 0
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(GROUP_NAME, CONSUMER_NAME),
+                            StreamReadOptions.empty().count(1),
+                            StreamOffset.create(QUEUE_NAME, ReadOffset.from("0"))
+                    );
+                    if (CollectionUtils.isEmpty(list)) {
+                        break;
+                    }
+                    applyAndAck(list);
+                } catch (Exception e) {
+                    log.error("处理关注事件pending-list异常", e);
+                    if (!running || Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException interruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        private void applyAndAck(List<MapRecord<String, Object, Object>> list) {
+            // 同一对用户按消息顺序只保留最后一次操作
+            Map<String, MapRecord<String, Object, Object>> latest = new LinkedHashMap<>();
+            for (MapRecord<String, Object, Object> record : list) {
+                Map<Object, Object> value = record.getValue();
+                latest.put(value.get("userId") + ":" + value.get("followUserId"), record);
             }
-        } else if (status == -2) {
-            // 删除数据
-            boolean remove = remove(new QueryWrapper<Follow>().eq("user_id", userId).eq("follow_user_id", followUserId));
-            if (!remove) {
-                throw new FollowBusinessException("执行取消关注操作异常!");
-            } else {
-                log.info(message);
+            List<Follow> pairs = new ArrayList<>(latest.size());
+            List<Follow> follows = new ArrayList<>(latest.size());
+            for (MapRecord<String, Object, Object> record : latest.values()) {
+                Map<Object, Object> value = record.getValue();
+                // 关注时间取消息写入时间（消息id前半部分的毫秒时间戳）
+                Follow follow = new Follow()
+                        .setUserId(Long.valueOf(value.get("userId").toString()))
+                        .setFollowUserId(Long.valueOf(value.get("followUserId").toString()))
+                        .setCreateTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(record.getId().getTimestamp()), ZoneId.systemDefault()));
+                pairs.add(follow);
+                if ("1".equals(value.get("type"))) {
+                    follows.add(follow);
+                }
             }
-        } else {
-            log.info(message);
+            proxy.applyFollowEvents(follows, pairs);
+            // XACK stream.follows g1 id1 id2 ...，已处理的消息从队列中删除，控制stream长度
+            RecordId[] ids = list.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+            stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, GROUP_NAME, ids);
+            stringRedisTemplate.opsForStream().delete(QUEUE_NAME, ids);
         }
     }
 
@@ -164,10 +307,35 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
             return Result.ok(Collections.emptyList());
         }
         List<Long> ids = intersect.stream().map(Long::parseLong).toList();
-        List<UserVO> userVOList = userService.listByIds(ids).stream().map(user -> userVOMapper.entityToUserVO(user)).toList();
+        List<UserVO> userVOList = userProfileCache.listByIds(ids).stream().map(user -> userVOMapper.entityToUserVO(user)).toList();
         return Result.ok(userVOList);
     }
 
+    @Override
+    public Result isFollowBatch(List<Long> ids) {
+        if (ids.size() > SystemConstants.MAX_BATCH_SIZE) {
+            return Result.fail("一次最多查询" + SystemConstants.MAX_BATCH_SIZE + "个用户");
+        }
+        return Result.ok(followGraphService.isFollowing(UserHolder.getUser().getId(), ids));
+    }
+
+    @Override
+    public Result commonPage(Long id, String cursor, Integer count) {
+        Long userId = UserHolder.getUser().getId();
+        // 校验游标：首页为0，之后必须是 被扫描的用户id:SSCAN游标，且被扫描的只能是这两个用户之一
+        if (cursor != null && !"0".equals(cursor)) {
+            if (RegexUtils.isFollowCursorInvalid(cursor)) {
+                return Result.fail("游标格式错误！");
+            }
+            String scanUserId = cursor.substring(0, cursor.indexOf(':'));
+            if (!scanUserId.equals(userId.toString()) && !scanUserId.equals(id.toString())) {
+                return Result.fail("游标格式错误！");
+            }
+        }
+        int pageSize = Math.min(Math.max(count, 1), SystemConstants.MAX_BATCH_SIZE);
+        return Result.ok(followGraphService.commonFollows(userId, id, cursor, pageSize));
+    }
+
     @Override
     public Result isFollow(Long followUserId) {
         // 获取当前用户id
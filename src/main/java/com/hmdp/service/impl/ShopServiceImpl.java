@@ -1,8 +1,12 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.exception.CacheRebuildTimeoutException;
@@ -10,28 +14,40 @@ import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.GeoUtils;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.ShopSpatialIndex;
+import com.hmdp.utils.ShopSpatialIndex.Hit;
 import com.hmdp.utils.SystemConstants;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static java.util.stream.DoubleStream.builder;
 
@@ -53,6 +69,38 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
+
+    // 附近商铺的搜索半径（米）
+    @Value("${hmdp.shop.geo.radius-meters:5000}")
+    private double geoRadiusMeters;
+
+    // 附近商铺候选集缓存的网格边长（米），同一网格内的用户共享候选集
+    @Value("${hmdp.shop.geo.cell-meters:500}")
+    private double geoCellMeters;
+
+    // 候选集缓存时间（秒）
+    @Value("${hmdp.shop.geo.cache-seconds:30}")
+    private long geoCacheSeconds;
+
+    private Cache<String, List<ShopPoint>> geoCandidates;
+
+    private record ShopPoint(long id, double x, double y) {
+    }
+
+
+    @PostConstruct
+    private void init() {
+        geoCandidates = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(geoCacheSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
     @Override
     public Result queryById(Long id) {
         // log.info("===== 开始查询商铺，ID: {} =====", id);
@@ -298,13 +346,71 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (ObjectUtils.isEmpty(shopId)) {
             return Result.fail("店铺id不能为空！");
         }
+        Shop old = getById(shopId);
+        if (old == null) {
+            return Result.fail("店铺不存在！");
+        }
         // 1.更新数据库
         updateById(shop);
-        // 2.删除缓存
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + shopId);
+        Shop latest = getById(shopId);
+        // 2.事务提交后再更新名称索引、GEO、空间索引并删除缓存：提前广播时其他节点会重新加载到未提交前的旧数据，回滚时也无需撤销
+        afterCommit(() -> {
+            shopSearchIndex.upsert(latest);
+            // 2.1坐标或类型变化时更新GEO和空间索引
+            if (!Objects.equals(old.getTypeId(), latest.getTypeId()) || !Objects.equals(old.getX(), latest.getX())
+                    || !Objects.equals(old.getY(), latest.getY())) {
+                stringRedisTemplate.opsForGeo().remove(RedisConstants.SHOP_GEO_KEY + old.getTypeId(), shopId.toString());
+                saveShopGeo(latest);
+            }
+            // 2.2删除缓存（同时广播清除各节点本地缓存，其他节点的空间索引随之重新加载该商铺）
+            cacheClient.delete(RedisConstants.CACHE_SHOP_KEY + shopId);
+        });
         return Result.ok();
     }
 
+    @Override
+    public boolean save(Shop shop) {
+        boolean saved = super.save(shop);
+        if (saved) {
+            // 通知其他节点的索引加载新商铺，外层有事务时等提交后执行
+            afterCommit(() -> {
+                shopSearchIndex.upsert(shop);
+                saveShopGeo(shop);
+                cacheClient.delete(RedisConstants.CACHE_SHOP_KEY + shop.getId());
+            });
+        }
+        return saved;
+    }
+
+    /**
+     * 当前有事务时在提交后执行，否则立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // 数据库已提交，这里的异常不能再影响请求结果，缓存由TTL兜底
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    log.error("商铺提交后同步缓存和索引失败", e);
+                }
+            }
+        });
+    }
+
+    private void saveShopGeo(Shop shop) {
+        shopSpatialIndex.upsert(shop);
+        if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+            stringRedisTemplate.opsForGeo().add(RedisConstants.SHOP_GEO_KEY + shop.getTypeId(),
+                    new Point(shop.getX(), shop.getY()), shop.getId().toString());
+        }
+    }
+
     @Override
     public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
         // 1.判断是否需要根据坐标查询
@@ -315,42 +421,143 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             // 返回数据
             return Result.ok(page.getRecords());
         }
+        if (!GeoUtils.isValid(x, y)) {
+            return Result.fail("坐标超出范围！");
+        }
         // 2.计算分页参数
         int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
-        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
-        // 3.查询redis，按照距离排序、分页，结果：shopId、distance(距离)
-        String key = RedisConstants.SHOP_GEO_KEY + typeId;
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo() // geosearch bylonlat x y byradius 10 withdistance
-                .search(key,
-                        GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
-                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
-                );
-        // 4.解析出id 查询shop
-        if (results == null) {
+        // 3.按距离排序的附近商铺（所在网格的候选集有本地缓存，翻页不再重复GEOSEARCH）
+        List<Hit> hits = searchNearby(typeId, x, y);
+        if (hits.size() <= from) {
             return Result.ok(Collections.emptyList());
         }
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if (list.size() <= from){
+        // 4.截取 from - end 的部分，从商铺缓存中查询
+        return Result.ok(hydrateShops(hits.subList(from, Math.min(from + SystemConstants.DEFAULT_PAGE_SIZE, hits.size()))));
+    }
+
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        // 没有关键字或索引不可用时查询数据库，与索引一样匹配名称或地址
+        if (StringUtils.isBlank(name) || !shopSearchIndex.isReady()) {
+            Page<Shop> page = query()
+                    .and(StringUtils.isNotBlank(name), w -> w.like("name", name).or().like("address", name))
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        // 倒排索引查出当前页的商铺id，再从商铺缓存中查询
+        List<Long> ids = shopSearchIndex.search(name, current, SystemConstants.MAX_PAGE_SIZE);
+        if (ids.isEmpty()) {
             return Result.ok(Collections.emptyList());
         }
-        // 4.1 截取 from - end 的部分
-        List<Long> ids = new ArrayList<>(list.size());
-        Map<String, Distance> distanceMap = new HashMap<>(list.size());
-        list.stream().skip(from).forEach(result -> {
-            // 4.2 获取店铺id
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            // 4.3 获取距离
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-        // 6.返回
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id, " + StringUtils.join(ids, ",") + ")").list();
-        for (Shop shop : shops) {
-           shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+        Map<Long, Shop> shops = queryShopsFromCache(ids);
+        return Result.ok(ids.stream().map(shops::get).filter(Objects::nonNull).collect(Collectors.toList()));
+    }
+
+    @Override
+    public Result queryShopByTypeScroll(Integer typeId, String cursor, Double x, Double y) {
+        if (!GeoUtils.isValid(x, y)) {
+            return Result.fail("坐标超出范围！");
+        }
+        // 1.游标为上一页最后一个商铺的 距离:id，找到第一个排在它后面的商铺
+        Hit last = null;
+        if (StringUtils.isNotBlank(cursor)) {
+            if (RegexUtils.isShopCursorInvalid(cursor)) {
+                return Result.fail("游标格式错误！");
+            }
+            int split = cursor.lastIndexOf(':');
+            last = new Hit(Long.parseLong(cursor.substring(split + 1)), Double.parseDouble(cursor.substring(0, split)));
+        }
+        List<Hit> hits = searchNearby(typeId, x, y);
+        int from = 0;
+        if (last != null) {
+            int index = Collections.binarySearch(hits, last, ShopSpatialIndex.HIT_ORDER);
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+        // 2.当前页
+        int end = Math.min(from + SystemConstants.DEFAULT_PAGE_SIZE, hits.size());
+        List<Hit> page = hits.subList(Math.min(from, end), end);
+        CursorResult<Shop> result = new CursorResult<>();
+        result.setList(hydrateShops(page));
+        result.setTotal((long) hits.size());
+        if (end < hits.size()) {
+            Hit tail = page.get(page.size() - 1);
+            result.setCursor(tail.distance() + ":" + tail.id());
+        }
+        return Result.ok(result);
+    }
+
+    /**
+     * 附近商铺：id + 距离，按距离、id升序
+     * <p>
+     * 按 (typeId, 网格, 半径) 缓存网格内所有用户都可能搜到的候选商铺（id + 坐标），
+     * 请求时用真实坐标重新计算距离、过滤半径并排序，因此同一网格内的用户共享缓存，距离仍然是精确的
+     */
+    private List<Hit> searchNearby(Integer typeId, double x, double y) {
+        // 进程内空间索引可用时直接查询，否则使用Redis GEO
+        if (shopSpatialIndex.isReady()) {
+            return shopSpatialIndex.search(typeId, x, y, geoRadiusMeters);
+        }
+        double cellDegrees = geoCellMeters / GeoUtils.METERS_PER_DEGREE;
+        long cellX = (long) Math.floor(x / cellDegrees);
+        long cellY = (long) Math.floor(y / cellDegrees);
+        // 在缓存外加载：Cache.get(key, loader) 会在持有桶锁时执行GEOSEARCH，虚拟线程模式下钉住载体线程
+        String cellKey = typeId + ":" + cellX + ":" + cellY + ":" + geoRadiusMeters;
+        List<ShopPoint> candidates = geoCandidates.getIfPresent(cellKey);
+        if (candidates == null) {
+            candidates = loadCandidates(typeId, (cellX + 0.5) * cellDegrees, (cellY + 0.5) * cellDegrees);
+            geoCandidates.put(cellKey, candidates);
+        }
+        List<Hit> hits = new ArrayList<>();
+        for (ShopPoint point : candidates) {
+            double distance = GeoUtils.distance(x, y, point.x(), point.y());
+            if (distance <= geoRadiusMeters) {
+                hits.add(new Hit(point.id(), distance));
+            }
+        }
+        hits.sort(ShopSpatialIndex.HIT_ORDER);
+        return hits;
+    }
+
+    private List<ShopPoint> loadCandidates(Integer typeId, double centerX, double centerY) {
+        // 从网格中心搜索 半径 + 网格边长，覆盖网格内任意一点的搜索范围 geosearch fromlonlat x y byradius r withcoord
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo()
+                .search(RedisConstants.SHOP_GEO_KEY + typeId,
+                        GeoReference.fromCoordinate(centerX, centerY),
+                        new Distance(geoRadiusMeters + geoCellMeters),
+                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeCoordinates());
+        if (results == null) {
+            return Collections.emptyList();
+        }
+        List<ShopPoint> points = new ArrayList<>(results.getContent().size());
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results) {
+            RedisGeoCommands.GeoLocation<String> location = result.getContent();
+            points.add(new ShopPoint(Long.parseLong(location.getName()), location.getPoint().getX(), location.getPoint().getY()));
+        }
+        return points;
+    }
+
+    private Map<Long, Shop> queryShopsFromCache(List<Long> ids) {
+        return cacheClient.batchQueryWithLogicalExpire(RedisConstants.CACHE_SHOP_KEY, RedisConstants.LOCK_SHOP_KEY,
+                ids, Shop.class, missed -> listByIds(missed).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                20L, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 从商铺缓存中批量查询并填充距离，按传入顺序返回
+     */
+    private List<Shop> hydrateShops(List<Hit> hits) {
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Shop> shops = queryShopsFromCache(hits.stream().map(Hit::id).collect(Collectors.toList()));
+        List<Shop> list = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            Shop shop = shops.get(hit.id());
+            if (shop != null) {
+                // 本地缓存中的对象是共享的，复制后再设置距离
+                list.add(BeanUtil.copyProperties(shop, Shop.class).setDistance(hit.distance()));
+            }
         }
-        // 6.返回
-        return Result.ok(shops);
+        return list;
     }
 }
@@ -1,9 +1,6 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.RandomUtil;
 
 import com.baomidou.mybatisplus.extension.conditions.query.LambdaQueryChainWrapper;
@@ -16,8 +13,11 @@ import com.hmdp.dto.mapper.UserDTOMapper;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.LoginSessionCache;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedTokenManager;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserProfileCache;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
@@ -28,7 +28,7 @@ import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -54,6 +54,15 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     private UserDTOMapper userDTOMapper;
+
+    @Resource
+    private UserProfileCache userProfileCache;
+
+    @Resource
+    private LoginSessionCache loginSessionCache;
+
+    @Resource
+    private SignedTokenManager signedTokenManager;
     // 用户
     private static final String USER = "user";
 
@@ -98,20 +107,20 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 6.不存在，创建新用户并保存
             user = createUserWithPhone(phone);
         }
+        UserDTO userDTO = userDTOMapper.toUserDTO(user);
+        // 签名令牌模式：用户信息保存在令牌中，不写入redis
+        if (signedTokenManager.isEnabled()) {
+            return Result.ok(signedTokenManager.issue(userDTO));
+        }
         // 7.保存用户信息到redis中
         // 7.1 随机生成token，作为登录令牌 ;true代表没有下划线
         String token = UUID.randomUUID().toString(true);
         // 7.2 将User对象转为HashMap存储
-        UserDTO userDTO = userDTOMapper.toUserDTO(user);
         log.info("原userDTO:{}",userDTO);
         log.info("icon == null? {}", userDTO.getIcon() == null);
         log.info("icon.isEmpty()? {}", userDTO.getIcon() != null && userDTO.getIcon().isEmpty());
-        // beanTOMap 其中第二个参数 setIgnoreNullValue(true) 表示忽略 null 值，.setFieldValueEditor表示把字段值转为字符串的相关操作
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
-                CopyOptions.create()
-                        .setIgnoreNullValue(true)
-                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue == null ? null : fieldValue.toString())
-        );
+        // 转为Hash字段（忽略null值，字段值都是字符串）
+        Map<String, String> userMap = userDTOMapper.toHash(userDTO);
         log.info("新userMap:{}",userMap);
         String tokenKey = LOGIN_USER_KEY + token;
         stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
@@ -188,14 +197,48 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Override
     public Result logout() {
-        // 删除当前用户token
-        Boolean delete = stringRedisTemplate.delete(LOGIN_USER_KEY + TOKEN_HOLDER);
-        if (BooleanUtil.isFalse(delete)){
+        // 删除当前用户token，同时清除各节点的本地会话缓存
+        String token = TOKEN_HOLDER.get();
+        boolean success = token != null
+                && (signedTokenManager.isEnabled() ? signedTokenManager.revoke(token) : loginSessionCache.invalidate(token));
+        if (!success) {
             return Result.fail("退出登录失败！");
         }
         return Result.ok("退出登录成功！");
     }
 
+    /**
+     * 用户资料变更，清除资料缓存
+     * <p>
+     * saveOrUpdate 内部走 updateById，同样会清除；按条件更新（update(wrapper)、update().set().update() 链式）
+     * 拿不到被修改的用户id，不会清除资料缓存，修改资料必须走 updateById / updateBatchById
+     */
+    @Override
+    public boolean updateById(User entity) {
+        boolean success = super.updateById(entity);
+        if (success) {
+            userProfileCache.invalidate(entity.getId());
+        }
+        return success;
+    }
+
+    @Override
+    public boolean updateBatchById(Collection<User> entityList, int batchSize) {
+        boolean success = super.updateBatchById(entityList, batchSize);
+        // 批量更新不经过 updateById，逐个清除资料缓存
+        entityList.forEach(user -> userProfileCache.invalidate(user.getId()));
+        return success;
+    }
+
+    @Override
+    public boolean saveOrUpdateBatch(Collection<User> entityList, int batchSize) {
+        boolean success = super.saveOrUpdateBatch(entityList, batchSize);
+        entityList.stream()
+                .filter(user -> user.getId() != null)
+                .forEach(user -> userProfileCache.invalidate(user.getId()));
+        return success;
+    }
+
     /**
      * 创建新用户并保存
      *
@@ -1,23 +1,29 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.OrderConsumerLagDTO;
 import com.hmdp.dto.Result;
 
 import com.hmdp.entity.VoucherOrder;
+import com.hmdp.exception.VoucherOrderBusinessException;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillStateCache;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
@@ -26,16 +32,17 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static com.baomidou.mybatisplus.extension.toolkit.Db.save;
 
@@ -64,6 +71,9 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private SeckillStateCache seckillStateCache;
+
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
 
     // shift + f6 同时修改变量
@@ -73,7 +83,32 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();// 创建线程池，单线程
+    // 分段库存脚本：归属段占位扣减、其他段扣减
+    private static final DefaultRedisScript<Long> SEGMENT_CLAIM_SCRIPT;
+    private static final DefaultRedisScript<Long> SEGMENT_TAKE_SCRIPT;
+
+    static {
+        SEGMENT_CLAIM_SCRIPT = new DefaultRedisScript<>();
+        SEGMENT_CLAIM_SCRIPT.setLocation(new ClassPathResource("seckillSegmentClaim.lua"));
+        SEGMENT_CLAIM_SCRIPT.setResultType(Long.class);
+        SEGMENT_TAKE_SCRIPT = new DefaultRedisScript<>();
+        SEGMENT_TAKE_SCRIPT.setLocation(new ClassPathResource("seckillSegmentTake.lua"));
+        SEGMENT_TAKE_SCRIPT.setResultType(Long.class);
+    }
+
+    // 订单消息队列及消费者组
+    private static final String QUEUE_NAME = "stream.orders";
+    private static final String GROUP_NAME = "g1";
+
+    // 消费者线程数，每个线程是组内一个独立的消费者 c1..cN
+    @Value("${hmdp.seckill.consumer.threads:4}")
+    private int consumerThreads;
+
+    // 每次XREADGROUP读取的最大消息数
+    @Value("${hmdp.seckill.consumer.batch-size:50}")
+    private int batchSize;
+
+    private ExecutorService seckillOrderExecutor;
     private volatile boolean running = true; // 控制线程运行状态
 
     //@PostConstruct 类初始化完后执行
@@ -86,7 +121,18 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         } catch (Exception e) {
             log.error("Redisson客户端连接异常", e);
         }
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        seckillOrderExecutor = Executors.newFixedThreadPool(consumerThreads + 1, r -> {
+            Thread t = new Thread(r, "seckill-order-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 1; i <= consumerThreads; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler("c" + i));
+        }
+        // 分段库存的各段订单队列由一个消费者轮询
+        seckillOrderExecutor.submit(new SegmentOrderHandler());
+        log.info("秒杀订单消费者已启动: consumers={}, batchSize={}", consumerThreads, batchSize);
     }
 
     //@PreDestroy 应用关闭前执行
@@ -94,24 +140,29 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private void destroy() {
         log.info("开始关闭秒杀订单处理服务...");
         running = false; // 停止线程循环
-        SECKILL_ORDER_EXECUTOR.shutdown(); // 关闭线程池
+        seckillOrderExecutor.shutdown(); // 关闭线程池
         try {
             // 等待线程池关闭，最多等待5秒
-            if (!SECKILL_ORDER_EXECUTOR.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
+            if (!seckillOrderExecutor.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
                 log.warn("线程池未能在5秒内正常关闭，强制关闭");
-                SECKILL_ORDER_EXECUTOR.shutdownNow();
+                seckillOrderExecutor.shutdownNow();
             } else {
                 log.info("秒杀订单处理服务已优雅关闭");
             }
         } catch (InterruptedException e) {
             log.warn("等待线程池关闭时被中断");
-            SECKILL_ORDER_EXECUTOR.shutdownNow();
+            seckillOrderExecutor.shutdownNow();
             Thread.currentThread().interrupt();
         }
     }
 
     private class VoucherOrderHandler implements Runnable {
-        String queueName = "stream.orders";
+        // 消费者名称，同一个组内各线程不同，pending-list也按消费者区分
+        private final String consumerName;
+
+        VoucherOrderHandler(String consumerName) {
+            this.consumerName = consumerName;
+        }
 
         @Override
         public void run() {
@@ -135,43 +186,26 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
             当线程池调用shutdownNow()时，会中断正在运行的线程
             * */
+            // 启动时先处理上次未确认的消息
+            handlePendingList();
             while (running && !Thread.currentThread().isInterrupted()) {
                 try {
-                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 streams.orders >
+                    // 1.批量获取消息队列中的订单信息 XREADGROUP GROUP g1 cN COUNT batchSize BLOCK 2000 streams.orders >
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
+                            Consumer.from(GROUP_NAME, consumerName),
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(QUEUE_NAME, ReadOffset.lastConsumed())
                     );
                     // 2.判断消息获取是否成功
                     if (CollectionUtils.isEmpty(list)) {
                         // 2.1如果获取失败，说明没有消息，继续下一次循环
                         continue;
                     }
-                    // 3.解析消息中的订单信息
-                    /*
-                    * MapRecord<String, Object, Object> 可以分解为三个部分：
-
-MapRecord：这是 Spring Data Redis 中表示 Stream 中一条记录（或消息） 的专用类。它包含了这条消息的所有元数据和内容。
-
-<String>：这第一个泛型参数代表 Stream 的 Key 的数据类型。在你的例子中，queueName 是一个 String 类型的变量（例如 "stream.orders"），所以这里是 String。
-
-<Object, Object>：这两个泛型参数代表 消息体（即 Value）中字段（Field）和值（Value）的数据类型。
-
-第一个 Object：字段（Field）的类型，通常是 String（例如 "voucherId", "userId"）。
-
-第二个 Object：字段值（Value）的类型，可以是 String, Long, Integer 等。*/
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    // 使用Hutool将Map数据转换为VoucherOrder对象
-                    // 参数false表示：严格模式，如果Map中存在VoucherOrder类没有的属性，将抛出异常
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    // 3.如果获取成功，可以下单
-                    handlerVoucherOrder(voucherOrder);
-                    // 4.ACK确认 告诉队列消息被处理了 SACK stream.orders g1 id  record.getId()获取队列里的消息id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
+                    // 3.解析消息中的订单信息，整批下单并ACK
+                    applyBatch(QUEUE_NAME, list);
                 } catch (Exception e) {
-                    log.error("处理订单异常", e);
+                    // 整批失败时事务已回滚，消息留在pending-list中，逐条重试以隔离异常消息
+                    log.error("批量处理订单异常, consumer={}", consumerName, e);
                     if (running && !Thread.currentThread().isInterrupted()) {
                         handlePendingList();
                     }
@@ -181,22 +215,125 @@ MapRecord：这是 Spring Data Redis 中表示 Stream 中一条记录（或消
         }
 
         private void handlePendingList() {
+            handleOrderPendingList(QUEUE_NAME, consumerName);
+        }
+    }
+
+    /**
+     * 分段库存的订单消费者
+     * <p>
+     * 各段的订单队列在不同的hash slot，不能用一个XREADGROUP读取，这里逐个队列非阻塞读取，全部为空时短暂休眠。
+     * 队列列表定期从 SECKILL_SEGMENT_STREAMS_KEY 刷新，发现新队列时创建消费者组并先处理其pending-list
+     */
+    private class SegmentOrderHandler implements Runnable {
+        private static final String CONSUMER_NAME = "s1";
+        private static final long REFRESH_MILLIS = 5000;
+        private static final long IDLE_MILLIS = 100;
+
+        private final Set<String> queues = new LinkedHashSet<>();
+        private long refreshAt;
+
+        @Override
+        public void run() {
             while (running && !Thread.currentThread().isInterrupted()) {
                 try {
-                    // 1.获取pending-list队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 streams.orders 0
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create(queueName, ReadOffset.from("0"))
-                    );
-                    // 2.判断消息获取是否成功
-                    if (CollectionUtils.isEmpty(list)) {
-                        // 2.1如果获取失败，说明peding-list没有异常消息，结束下一次循环
-                        break;
+                    // 1.刷新队列列表
+                    if (System.currentTimeMillis() >= refreshAt) {
+                        refreshQueues();
+                        refreshAt = System.currentTimeMillis() + REFRESH_MILLIS;
+                    }
+                    // 2.逐个队列读取 XREADGROUP GROUP g1 s1 COUNT batchSize STREAMS stream.orders{voucherId:n} >
+                    boolean idle = true;
+                    for (String queue : queues) {
+                        if (!running) {
+                            break;
+                        }
+                        idle &= !pollQueue(queue);
                     }
-                    // 3.解析消息中的订单信息
-                    /*
-                    * MapRecord<String, Object, Object> 可以分解为三个部分：
+                    if (idle) {
+                        Thread.sleep(IDLE_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("读取分段订单队列异常", e);
+                    refreshAt = 0;
+                }
+            }
+        }
+
+        private void refreshQueues() {
+            Set<String> members = stringRedisTemplate.opsForSet().members(RedisConstants.SECKILL_SEGMENT_STREAMS_KEY);
+            if (members == null) {
+                return;
+            }
+            for (String queue : members) {
+                if (queues.contains(queue)) {
+                    continue;
+                }
+                // 创建消费者组（XGROUP CREATE stream.orders{voucherId:n} g1 0 MKSTREAM），已存在时忽略
+                try {
+                    stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.streamCommands()
+                            .xGroupCreate(queue.getBytes(StandardCharsets.UTF_8), GROUP_NAME, ReadOffset.from("0"), true));
+                } catch (Exception e) {
+                    log.debug("分段订单队列消费者组已存在: {}", queue);
+                }
+                // 上次未确认的消息
+                handleOrderPendingList(queue, CONSUMER_NAME);
+                queues.add(queue);
+            }
+        }
+
+        // 返回是否读到了消息
+        private boolean pollQueue(String queue) {
+            try {
+                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(GROUP_NAME, CONSUMER_NAME),
+                        StreamReadOptions.empty().count(batchSize),
+                        StreamOffset.create(queue, ReadOffset.lastConsumed())
+                );
+                if (CollectionUtils.isEmpty(list)) {
+                    return false;
+                }
+                applyBatch(queue, list);
+                return true;
+            } catch (Exception e) {
+                log.error("批量处理分段订单异常, queue={}", queue, e);
+                if (running && !Thread.currentThread().isInterrupted()) {
+                    handleOrderPendingList(queue, CONSUMER_NAME);
+                }
+                return true;
+            }
+        }
+    }
+
+    // 整批下单：一次多行INSERT，每个券只扣一次库存，然后整批ACK XACK queue g1 id1 id2 ...
+    private void applyBatch(String queue, List<MapRecord<String, Object, Object>> list) {
+        List<VoucherOrder> voucherOrders = list.stream()
+                .map(record -> BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true))
+                .toList();
+        proxy.createVoucherOrderBatch(voucherOrders);
+        stringRedisTemplate.opsForStream().acknowledge(queue, GROUP_NAME,
+                list.stream().map(MapRecord::getId).toArray(RecordId[]::new));
+    }
+
+    private void handleOrderPendingList(String queue, String consumerName) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                // 1.获取pending-list队列中的订单信息 XREADGROUP GROUP g1 cN COUNT 1 streams.orders 0
+                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(GROUP_NAME, consumerName),
+                        StreamReadOptions.empty().count(1),
+                        StreamOffset.create(queue, ReadOffset.from("0"))
+                );
+                // 2.判断消息获取是否成功
+                if (CollectionUtils.isEmpty(list)) {
+                    // 2.1如果获取失败，说明peding-list没有异常消息，结束下一次循环
+                    break;
+                }
+                // 3.解析消息中的订单信息
+                /*
+                * MapRecord<String, Object, Object> 可以分解为三个部分：
 
 MapRecord：这是 Spring Data Redis 中表示 Stream 中一条记录（或消息） 的专用类。它包含了这条消息的所有元数据和内容。
 
@@ -207,25 +344,24 @@ MapRecord：这是 Spring Data Redis 中表示 Stream 中一条记录（或消
 第一个 Object：字段（Field）的类型，通常是 String（例如 "voucherId", "userId"）。
 
 第二个 Object：字段值（Value）的类型，可以是 String, Long, Integer 等。*/
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    // 使用Hutool将Map数据转换为VoucherOrder对象
-                    // 参数false表示：严格模式，如果Map中存在VoucherOrder类没有的属性，将抛出异常
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    // 3.如果获取成功，可以下单
-                    handlerVoucherOrder(voucherOrder);
-                    // 4.ACK确认 告诉队列消息被处理了 SACK stream.orders g1 id  record.getId()获取队列里的消息id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-                } catch (Exception e) {
-                    log.error("处理peding-list异常", e);
-                    if (!running || Thread.currentThread().isInterrupted()) {
-                        break;
-                    }
-                    try {
-                        Thread.sleep(20);
-                    } catch (InterruptedException interruptedException) {
-                        interruptedException.printStackTrace();
-                    }
+                MapRecord<String, Object, Object> record = list.get(0);
+                Map<Object, Object> values = record.getValue();
+                // 使用Hutool将Map数据转换为VoucherOrder对象
+                // 参数false表示：严格模式，如果Map中存在VoucherOrder类没有的属性，将抛出异常
+                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
+                // 3.如果获取成功，可以下单
+                handlerVoucherOrder(voucherOrder);
+                // 4.ACK确认 告诉队列消息被处理了 SACK stream.orders g1 id  record.getId()获取队列里的消息id
+                stringRedisTemplate.opsForStream().acknowledge(queue, GROUP_NAME, record.getId());
+            } catch (Exception e) {
+                log.error("处理peding-list异常", e);
+                if (!running || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
                 }
             }
         }
@@ -297,25 +433,132 @@ MapRecord：这是 Spring Data Redis 中表示 Stream 中一条记录（或消
 
     }
 
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public void createVoucherOrderBatch(List<VoucherOrder> voucherOrders) {
+        // 1.一人一单：一次查询过滤掉已落库的（消息重投）和批内重复的订单
+        //   Lua脚本已经保证了一人一单，这里只是兜底，因此不再对每个用户加分布式锁
+        Set<Long> userIds = voucherOrders.stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = voucherOrders.stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        Set<String> purchased = query().select("user_id", "voucher_id")
+                .in("user_id", userIds)
+                .in("voucher_id", voucherIds)
+                .list().stream()
+                .map(order -> order.getUserId() + ":" + order.getVoucherId())
+                .collect(Collectors.toSet());
+        List<VoucherOrder> toSave = new ArrayList<>(voucherOrders.size());
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            if (purchased.add(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId())) {
+                toSave.add(voucherOrder);
+            } else {
+                log.error("用户已经购买过一次了, userId={}, voucherId={}", voucherOrder.getUserId(), voucherOrder.getVoucherId());
+            }
+        }
+        if (toSave.isEmpty()) {
+            return;
+        }
+        // 2.扣减库存：每个券只执行一次UPDATE
+        Map<Long, Long> countByVoucher = toSave.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        countByVoucher.forEach((voucherId, count) -> {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", voucherId)
+                    .ge("stock", count) // 乐观锁 库存必须足够本批扣减
+                    .update();
+            if (!success) {
+                // 整批回滚，交给pending-list逐条处理
+                throw new VoucherOrderBusinessException("扣减库存失败, voucherId=" + voucherId + ", count=" + count);
+            }
+        });
+        // 3.一条多行INSERT保存整批订单
+        getBaseMapper().insertBatch(toSave);
+    }
+
+    @Override
+    public Result queryOrderConsumerLag() {
+        StreamOperations<String, Object, Object> ops = stringRedisTemplate.opsForStream();
+        OrderConsumerLagDTO lag = new OrderConsumerLagDTO();
+        lag.setConsumers(consumerThreads);
+        lag.setStreamLength(ops.size(QUEUE_NAME));
+        // 已投递未确认的消息
+        PendingMessagesSummary summary = ops.pending(QUEUE_NAME, GROUP_NAME);
+        lag.setPending(summary.getTotalPendingMessages());
+        // 最后写入的消息与组内最后投递的消息，不相同说明还有未投递的消息
+        String lastGeneratedId = ops.info(QUEUE_NAME).lastGeneratedId();
+        String lastDeliveredId = ops.groups(QUEUE_NAME).stream()
+                .filter(group -> GROUP_NAME.equals(group.groupName()))
+                .map(StreamInfo.XInfoGroup::lastDeliveredId)
+                .findFirst().orElse("0-0");
+        lag.setLastGeneratedId(lastGeneratedId);
+        lag.setLastDeliveredId(lastDeliveredId);
+        // 消费延迟：最早一条未处理消息在队列中等待的时间（消息id前半部分即写入时的毫秒时间戳）
+        String oldestId = summary.getTotalPendingMessages() > 0
+                ? summary.minMessageId()
+                : (lastDeliveredId.equals(lastGeneratedId) ? null : lastDeliveredId);
+        lag.setLagMillis(oldestId == null ? 0L
+                : Math.max(0L, System.currentTimeMillis() - RecordId.of(oldestId).getTimestamp()));
+        return Result.ok(lag);
+    }
+
+    // 注入自身代理（事务），消费线程启动时就需要，不能等第一次下单再从AopContext获取
+    @Lazy
+    @Resource
     private IVoucherOrderService proxy;
 
     @Override
     public Result seckillVoucher(Long voucherId) throws InterruptedException {
-        // 获取订单id
-        long orderId = redisIdWorker.nextId("order");
-        // 1.执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(),
-                UserHolder.getUser().getId().toString(),
-                String.valueOf(orderId),
-                LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
-        );
+        // 0.本地预检：已售罄、未开始、已结束的请求直接拒绝，不访问Redis
+        SeckillStateCache.Admission admission = seckillStateCache.tryAcquire(voucherId);
+        String rejected = switch (admission) {
+            case NOT_STARTED -> "秒杀尚未开始";
+            case ENDED -> "秒杀已经结束";
+            case SOLD_OUT -> "库存不足";
+            case BUSY -> "抢购人数过多，请稍后再试";
+            default -> null;
+        };
+        if (rejected != null) {
+            return Result.fail(rejected);
+        }
+        boolean acquired = admission == SeckillStateCache.Admission.ACQUIRED;
+        int r;
+        long orderId;
+        try {
+            // 获取订单id
+            orderId = redisIdWorker.nextId("order");
+            Long userId = UserHolder.getUser().getId();
+            int segments = seckillStateCache.segmentsOf(voucherId);
+            if (segments > 1) {
+                // 1.1分段库存
+                r = seckillBySegments(voucherId, userId, orderId, segments);
+            } else {
+                // 1.2执行lua脚本
+                Long result = stringRedisTemplate.execute(
+                        SECKILL_SCRIPT,
+                        Collections.emptyList(),
+                        voucherId.toString(),
+                        userId.toString(),
+                        String.valueOf(orderId),
+                        LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                );
+                r = result.intValue();
+            }
+        } catch (RuntimeException e) {
+            if (acquired) {
+                seckillStateCache.release(voucherId);
+            }
+            throw e;
+        }
 
         // 2.判断结果是否为0
-        int r = result.intValue();
         if (r != 0) {
+            // 2.1没有购买资格，归还本地令牌；库存不足时标记售罄并通知其他节点
+            if (acquired) {
+                seckillStateCache.release(voucherId);
+            }
+            if (r == 1) {
+                seckillStateCache.markSoldOut(voucherId);
+            }
             // 2.2不为0，代表没有购买资格
             String error = switch (r) {
                 case -1 -> "秒杀尚未开始";
@@ -326,12 +569,55 @@ MapRecord：这是 Spring Data Redis 中表示 Stream 中一条记录（或消
             };
             return Result.fail(error);
         }
-        // 3.获取代理对象
-        // 获取代理对象(事务)
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
-        // 4.返回订单id
+        // 3.返回订单id
         return Result.ok(orderId);
     }
+    /**
+     * 分段库存秒杀，返回值与seckill.lua一致
+     * <p>
+     * 用户按id固定归属一个段，一人一单的记录只写在归属段的订单集合中；归属段售罄后依次从其他段扣减，
+     * 全部售罄时撤销占位。每个脚本只访问同一个段的key，各段可以分布在不同的Redis节点上。
+     * 下单消息写入扣减成功的那个段的订单队列 stream.orders{voucherId:n}，与扣减在同一个脚本中完成，
+     * 进程在两次调用之间退出也不会出现扣了库存却没有订单的情况。
+     */
+    private int seckillBySegments(Long voucherId, Long userId, long orderId, int segments) {
+        // 1.时间校验（分段脚本不访问主Hash）
+        SeckillStateCache.Admission time = seckillStateCache.checkTime(voucherId);
+        if (time == SeckillStateCache.Admission.NOT_STARTED) {
+            return -1;
+        }
+        if (time == SeckillStateCache.Admission.ENDED) {
+            return -2;
+        }
+        // 2.在归属段占位并尝试扣减，成功时同时写入归属段的订单队列
+        int home = Math.floorMod(Long.hashCode(userId), segments);
+        String orderKey = SeckillStateCache.segmentOrderKey(voucherId, home);
+        Long claim = stringRedisTemplate.execute(SEGMENT_CLAIM_SCRIPT,
+                Arrays.asList(SeckillStateCache.segmentStockKey(voucherId, home), orderKey,
+                        SeckillStateCache.segmentStreamKey(voucherId, home)),
+                userId.toString(), voucherId.toString(), String.valueOf(orderId));
+        if (claim.intValue() == 2) {
+            return 2;
+        }
+        if (claim.intValue() == 0) {
+            return 0;
+        }
+        // 3.归属段已售罄，依次从其他段扣减，成功时同时写入该段的订单队列
+        for (int i = 1; i < segments; i++) {
+            int segment = (home + i) % segments;
+            Long result = stringRedisTemplate.execute(SEGMENT_TAKE_SCRIPT,
+                    Arrays.asList(SeckillStateCache.segmentStockKey(voucherId, segment),
+                            SeckillStateCache.segmentStreamKey(voucherId, segment)),
+                    userId.toString(), voucherId.toString(), String.valueOf(orderId));
+            if (result.intValue() == 0) {
+                return 0;
+            }
+        }
+        // 4.全部售罄，撤销占位
+        stringRedisTemplate.opsForSet().remove(orderKey, userId.toString());
+        return 1;
+    }
+
     /*@Override
     public Result seckillVoucher(Long voucherId) throws InterruptedException {
         // 1.执行lua脚本
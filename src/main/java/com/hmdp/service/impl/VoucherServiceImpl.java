@@ -10,6 +10,7 @@ import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SeckillStateCache;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -36,6 +37,9 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SeckillStateCache seckillStateCache;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -61,6 +65,28 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
                 CopyOptions.create()
                         .setIgnoreNullValue(true)
                         .setFieldValueEditor((fieldName, fieldValue) -> fieldValue == null ? null : fieldValue.toString()));
+        // 分段库存：主Hash只保存时间、初始总库存和段数，剩余库存拆分到各段
+        int segments = voucher.getStockSegments() == null ? 0 : voucher.getStockSegments();
+        if (segments > 1) {
+            seckillVoucherMap.put("segments", String.valueOf(segments));
+            // 主Hash的stock置0，即使误走seckill.lua也只会返回库存不足，初始总库存另存totalStock
+            seckillVoucherMap.put("stock", "0");
+            seckillVoucherMap.put("totalStock", String.valueOf(voucher.getStock()));
+            // 登记各段的订单队列，订单消费者发现新队列后创建消费者组并从头消费
+            String[] streams = new String[segments];
+            for (int i = 0; i < segments; i++) {
+                streams[i] = SeckillStateCache.segmentStreamKey(voucher.getId(), i);
+            }
+            stringRedisTemplate.opsForSet().add(RedisConstants.SECKILL_SEGMENT_STREAMS_KEY, streams);
+            int stock = voucher.getStock();
+            for (int i = 0; i < segments; i++) {
+                // 余数分给前面的段
+                int segmentStock = stock / segments + (i < stock % segments ? 1 : 0);
+                stringRedisTemplate.opsForValue().set(SeckillStateCache.segmentStockKey(voucher.getId(), i), String.valueOf(segmentStock));
+            }
+        }
         stringRedisTemplate.opsForHash().putAll(RedisConstants.SECKILL_TYPE_KEY + voucher.getId(),seckillVoucherMap);
+        // 通知各节点重新加载本地秒杀状态
+        seckillStateCache.publishChange(voucher.getId());
     }
 }
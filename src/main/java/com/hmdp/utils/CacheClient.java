@@ -2,25 +2,33 @@ package com.hmdp.utils;
 
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.thread.ThreadFactoryBuilder;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.hmdp.entity.Shop;
+import com.hmdp.exception.CacheRebuildTimeoutException;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.JsonCacheCodec;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.ObjectUtils;
-import org.apache.commons.lang3.StringUtils;
-import org.springframework.dao.DataAccessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.RedisCallback;
-import org.springframework.data.redis.core.RedisOperations;
-import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -34,18 +42,173 @@ public class CacheClient {
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 所有编解码器，按@Order排序，读取时依次按字节头识别
+    @Resource
+    private List<CacheCodec> cacheCodecs;
+
+    // 写入时使用的编解码器名称：json / binary，不支持的类型自动退回json
+    @Value("${hmdp.cache.codec:json}")
+    private String codecName;
+
+    private CacheCodec preferredCodec;
+
+    private CacheCodec fallbackCodec;
+
+    // 是否开启本地一级缓存（L1），关闭时所有读请求直接走Redis
+    @Value("${hmdp.cache.local.enabled:false}")
+    private boolean localCacheEnabled;
+
+    // 本地缓存总权重上限，按Redis中的字节数估算占用
+    @Value("${hmdp.cache.local.maximum-weight:10485760}")
+    private long localMaximumWeight;
+
+    // 本地缓存最长存活时间，即使逻辑过期时间更晚也不超过该值，兜底跨节点一致性
+    @Value("${hmdp.cache.local.max-ttl-seconds:60}")
+    private long localMaxTtlSeconds;
+
+    // 本地一级缓存：key -> 反序列化后的对象
+    private Cache<String, LocalEntry> localCache;
+
+    /**
+     * 本地缓存条目
+     * @param value 反序列化后的对象，调用方不得修改
+     * @param weight 权重，取Redis中值的字节数
+     * @param expireAtMillis 本地过期时间戳（毫秒）
+     */
+    private record LocalEntry(Object value, int weight, long expireAtMillis) {
+    }
+
+    @PostConstruct
+    private void init() {
+        fallbackCodec = findCodec(JsonCacheCodec.NAME);
+        preferredCodec = findCodec(codecName);
+        log.info("缓存编解码器: {}", preferredCodec.name());
+        if (!localCacheEnabled) {
+            return;
+        }
+        localCache = Caffeine.newBuilder()
+                .maximumWeight(localMaximumWeight)
+                .weigher((String key, LocalEntry entry) -> entry.weight())
+                // 每个key单独的过期时间，取自RedisData.expireTime
+                .expireAfter(new Expiry<String, LocalEntry>() {
+                    @Override
+                    public long expireAfterCreate(String key, LocalEntry entry, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.expireAtMillis() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, LocalEntry entry, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, entry, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, LocalEntry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        // 订阅失效广播，其他节点删除缓存时同步清除本节点的本地缓存
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+        log.info("本地一级缓存已开启, maximumWeight={}, maxTtl={}s", localMaximumWeight, localMaxTtlSeconds);
+    }
+
+    private CacheCodec findCodec(String name) {
+        return cacheCodecs.stream()
+                .filter(codec -> codec.name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("未知的缓存编解码器: " + name));
+    }
+
+    private byte[] encode(Object value, LocalDateTime expireTime) {
+        CacheCodec codec = preferredCodec.supports(value.getClass()) ? preferredCodec : fallbackCodec;
+        return codec.encode(value, expireTime);
+    }
+
+    // 按字节头选择编解码器，新旧格式可以共存；返回null表示无法识别（如未知版本），按未命中处理
+    private <R> RedisData<R> decode(byte[] raw, Class<R> type, boolean logicalExpire) {
+        for (CacheCodec codec : cacheCodecs) {
+            if (codec.accepts(raw)) {
+                return codec.decode(raw, type, logicalExpire);
+            }
+        }
+        return null;
+    }
+
+    private <R> R decodeData(byte[] raw, Class<R> type) {
+        RedisData<R> redisData = decode(raw, type, false);
+        return redisData == null ? null : redisData.getData();
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 直接读取字节，绕过StringRedisTemplate的字符串序列化
+    private byte[] getRaw(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(rawKey(key)));
+    }
+
+    private void setRaw(String key, byte[] value, Expiration expiration) {
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().set(rawKey(key), value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R getLocal(String key, Class<R> type) {
+        if (localCache == null) {
+            return null;
+        }
+        LocalEntry entry = localCache.getIfPresent(key);
+        if (entry == null || !type.isInstance(entry.value())) {
+            return null;
+        }
+        return (R) entry.value();
+    }
+
+    private void putLocal(String key, Object value, int weight, LocalDateTime expireTime) {
+        if (localCache == null || value == null) {
+            return;
+        }
+        long expireAtMillis = Math.min(
+                expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(localMaxTtlSeconds));
+        localCache.put(key, new LocalEntry(value, weight, expireAtMillis));
+    }
+
+    private void evictLocal(String key) {
+        if (localCache != null) {
+            localCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 删除缓存，同时清除本地缓存并广播给其他节点
+     * @param key 缓存key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        evictLocal(key);
+        stringRedisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, key);
+    }
+
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        setRaw(key, encode(value, null), Expiration.from(time, unit));
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
         // 设置逻辑过期
-        RedisData<Object> redisData = RedisData.<Object>builder()
-                .data(value)
-                .expireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time))).build();
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
-
+        setRaw(key, encode(value, expireTime), Expiration.persistent());
+        // 旧值作废，同时广播给其他节点，下次读取时重新加载
+        evictLocal(key);
+        stringRedisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, key);
     }
 
     // 缓存击穿
@@ -54,14 +217,17 @@ public class CacheClient {
         // 商品缓存key
         String key = keyPrefix + id;
         // 1.从redis查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] raw = getRaw(key);
         // 2.判断是否存在
-        if (StringUtils.isNoneBlank(json)) {
+        if (raw != null && raw.length > 0) {
             // 3.存在，返回数据
-            return JSONUtil.toBean(json, type);
+            R cached = decodeData(raw, type);
+            if (cached != null) {
+                return cached;
+            }
         }
         // 2. 命中空值
-        if (json != null && json.isEmpty()) {
+        if (raw != null && raw.length == 0) {
             // 返回一个错误信息
             return null;
         }
@@ -86,20 +252,70 @@ public class CacheClient {
         // 缓存key
         String key = keyPrefix + id;
         // 1.从redis查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] raw = getRaw(key);
         // 2.判断是否存在
-        if (StringUtils.isNoneBlank(json)) {
+        if (raw != null && raw.length > 0) {
             // 3.存在，返回数据
-            return JSONUtil.toBean(json, type);
+            R cached = decodeData(raw, type);
+            if (cached != null) {
+                return cached;
+            }
         }
         // 2. 命中空值
-        if (json != null && json.isEmpty()) {
+        if (raw != null && raw.length == 0) {
             // 返回一个错误信息
             return null;
         }
+        // 3.本节点合并请求：同一个key只有一个线程（leader）去抢Redis锁重建，其余线程等待同一个future
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = IN_FLIGHT.putIfAbsent(key, flight);
+        if (existing != null) {
+            // 3.1 已有leader在重建，等待结果被唤醒，不再轮询Redis
+            return awaitFlight(existing, id, type);
+        }
+        try {
+            // 3.2 当前线程是leader，负责重建
+            R r = rebuildWithMutex(key, lockKeyPrefix + id, id, type, dbFallback, time, cacheNullTtl, unit);
+            flight.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(key, flight);
+        }
+    }
+
+    // 正在重建中的key：key -> 重建结果
+    private static final ConcurrentHashMap<String, CompletableFuture<Object>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    // 等待leader重建的最长时间，略大于leader轮询Redis的总时长（约1.5秒）
+    private static final long FLIGHT_WAIT_MILLIS = 3000L;
+
+    private <R, ID> R awaitFlight(CompletableFuture<Object> flight, ID id, Class<R> type) {
+        try {
+            return type.cast(flight.get(FLIGHT_WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            log.warn("等待本节点缓存重建超时，id={}", id);
+            throw new CacheRebuildTimeoutException("缓存重建超时，请检查DB或Redis状态");
+        } catch (ExecutionException e) {
+            // leader重建失败，异常原样抛给所有等待者
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    // leader线程：抢Redis互斥锁重建缓存，抢不到说明其他节点在重建，轮询等待
+    private <R, ID> R rebuildWithMutex(String key, String lockKey, ID id, Class<R> type,
+                                       Function<ID, R> dbFallback, Long time, Long cacheNullTtl, TimeUnit unit) {
+        byte[] raw;
         // 4.实现缓存重建
         // 4.1获取互斥锁
-        String lockKey = lockKeyPrefix + id;
         R r = null;
         // 获取锁是否成功
         boolean isLock = tryLock(lockKey);
@@ -118,11 +334,14 @@ public class CacheClient {
                     // - 1 + retryCount / 5 ：基础倍数
                     // - 20L * (基础倍数) ：最终睡眠时间
                     Thread.sleep(20L * (1 + retryCount / 5)); // 动态调整间隔
-                    json = stringRedisTemplate.opsForValue().get(key);
-                    if (StringUtils.isNotBlank(json)) {
-                        return JSONUtil.toBean(json, type);
+                    raw = getRaw(key);
+                    if (raw != null && raw.length > 0) {
+                        R cached = decodeData(raw, type);
+                        if (cached != null) {
+                            return cached;
+                        }
                     }
-                    if (json != null && json.isEmpty()) {
+                    if (raw != null && raw.length == 0) {
                         return null;
                     }
                     retryCount++;
@@ -133,7 +352,7 @@ public class CacheClient {
                 // ❌ 场景 3：Redis 写入失败（网络抖动）
                 // 超时 → 区分“不存在”和“系统异常”
                 log.warn("等待缓存重建超时，id={}，可能原因：重建线程异常或Redis写入失败", id);
-                throw new RuntimeException("缓存重建超时，请检查DB或Redis状态");
+                throw new CacheRebuildTimeoutException("缓存重建超时，请检查DB或Redis状态");
             }
             // ✅ 只有抢到锁的线程才走到这里
             // 4.4成功，根据id查询数据库
@@ -146,9 +365,9 @@ public class CacheClient {
                 return null;
             }
             // 6.存在写入redis缓存
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(r), time,
-                    unit);
+            this.set(key, r, time, unit);
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         } finally {
             // 7.释放互斥锁
@@ -161,46 +380,36 @@ public class CacheClient {
         return r;
     }
 
-    // 线程池
-    // 使用自定义线程池配置
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = new ThreadPoolExecutor(
-            5,  // 核心线程数：常驻线程
-            20,  // 最大线程数：高峰期最多线程
-            60L, TimeUnit.SECONDS, // 空闲时间：非核心线程存活时间
-            new LinkedBlockingQueue<>(100), // 队列大小：等待队列容量
-            new ThreadFactory() { // 线程工厂：自定义线程创建
-                private final AtomicInteger threadNumber = new AtomicInteger(1);
-
-                @Override
-                public Thread newThread(Runnable r) {
-                    Thread t = new Thread(r, "cache-rebuild-" + threadNumber.getAndIncrement());
-                    t.setDaemon(true);
-                    return t;
-                }
-            },
-            new ThreadPoolExecutor.CallerRunsPolicy() // 拒绝策略：调用者执行
-    );
+    // 缓存重建线程池（ThreadingConfig，可切换为虚拟线程）
+    @Resource(name = "cacheRebuildExecutor")
+    private ExecutorService cacheRebuildExecutor;
 
     // 逻辑过期解决缓存击穿
     public <R, ID> R queryWithLogicalExpire(String keyPrefix, String lockKeyPrefix, ID id, Class<R> type,
                                             Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         // 商品缓存key
         String key = keyPrefix + id;
+        // 0.先查本地缓存，命中说明逻辑上未过期，无需访问Redis
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
         // 1.从redis查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] raw = getRaw(key);
         // 2.判断是否存在
-        if (StringUtils.isBlank(json)) {
+        if (raw == null || raw.length == 0) {
             // 3.不存在，返回数据
             log.warn("===== 缓存数据不存在，返回null =====");
             return null;
         }
-        // 4.命中，需要把json反序列化成对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
+        // 4.命中，反序列化成对象（只解析一次）；无法识别的格式按已过期处理，触发重建
+        RedisData<R> redisData = decode(raw, type, true);
+        R r = redisData == null ? null : redisData.getData();
+        LocalDateTime expireTime = redisData == null ? null : redisData.getExpireTime();
         // 5.判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            // 5.1 未过期，直接返回店铺信息
+        if (expireTime != null && expireTime.isAfter(LocalDateTime.now())) {
+            // 5.1 未过期，写入本地缓存后直接返回店铺信息
+            putLocal(key, r, raw.length, expireTime);
             return r;
         }
         // 5.2 已过期，需要缓存重建
@@ -212,19 +421,22 @@ public class CacheClient {
             // 6.3获取锁成功且再判断一次缓存过期时间，防止已经重建好的缓存且锁刚被删除时又有个线程拿到锁来重复创建缓存
             try {
                 // 双重检查：再次验证是否过期（防止重复重建缓存）
-                String latestJson = stringRedisTemplate.opsForValue().get(key);
-                if (StringUtils.isNotBlank(latestJson)) {
-                    RedisData latestData = JSONUtil.toBean(latestJson, RedisData.class);
-                    if (latestData.getExpireTime().isAfter(LocalDateTime.now())) {
+                byte[] latestRaw = getRaw(key);
+                if (latestRaw != null && latestRaw.length > 0) {
+                    RedisData<R> latestData = decode(latestRaw, type, true);
+                    if (latestData != null && latestData.getExpireTime() != null
+                            && latestData.getExpireTime().isAfter(LocalDateTime.now())) {
                         // 当发现缓存未过期时，应该提前释放锁，然后返回数据
                         log.info("[{}] ✅ 双重检查发现缓存已更新且未过期，立即释放锁并返回新数据", UUID.randomUUID().toString(true)+"-"+Thread.currentThread().getId());
                         unLock(lockKey);
                         // 已经重建完缓存，直接返回数据
-                        return JSONUtil.toBean((JSONObject) latestData.getData(), type);
+                        R latest = latestData.getData();
+                        putLocal(key, latest, latestRaw.length, latestData.getExpireTime());
+                        return latest;
                     }
                 }
                 // 确实需要重建，启动异步重建
-                CACHE_REBUILD_EXECUTOR.submit(() -> {
+                cacheRebuildExecutor.submit(() -> {
                     // 7.5重建缓存
                     try {
                         // 重新查询数据库
@@ -258,65 +470,143 @@ public class CacheClient {
     }
 
 
+    /**
+     * 批量查询逻辑过期缓存：本地缓存 -> MGET，已过期的返回旧值并异步重建，不存在的批量查询数据库后写入
+     * @return id -> 数据，数据库中也不存在的id不在结果中
+     */
+    public <R, ID> Map<ID, R> batchQueryWithLogicalExpire(String keyPrefix, String lockKeyPrefix, Collection<ID> ids,
+                                                         Class<R> type, Function<Collection<ID>, Map<ID, R>> dbFallback,
+                                                         Long time, TimeUnit unit) {
+        Map<ID, R> result = new HashMap<>(ids.size());
+        // 1.先查本地缓存
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : ids) {
+            R local = getLocal(keyPrefix + id, type);
+            if (local != null) {
+                result.put(id, local);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        // 2.MGET批量查询Redis
+        byte[][] keys = remoteIds.stream().map(id -> rawKey(keyPrefix + id)).toArray(byte[][]::new);
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(keys));
+        List<ID> missedIds = new ArrayList<>();
+        List<ID> expiredIds = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            byte[] raw = values == null ? null : values.get(i);
+            RedisData<R> redisData = raw == null || raw.length == 0 ? null : decode(raw, type, true);
+            if (redisData == null || redisData.getData() == null) {
+                missedIds.add(id);
+                continue;
+            }
+            result.put(id, redisData.getData());
+            if (redisData.getExpireTime() != null && redisData.getExpireTime().isAfter(now)) {
+                putLocal(keyPrefix + id, redisData.getData(), raw.length, redisData.getExpireTime());
+            } else if (tryLock(lockKeyPrefix + id)) {
+                // 已过期：返回旧值，抢到锁的id交给异步重建
+                expiredIds.add(id);
+            }
+        }
+        // 3.未命中的一次查询数据库，管道写入Redis
+        if (!missedIds.isEmpty()) {
+            Map<ID, R> loaded = dbFallback.apply(missedIds);
+            writeWithLogicalExpire(keyPrefix, loaded, time, unit);
+            result.putAll(loaded);
+        }
+        // 4.已过期的一次查询数据库重建
+        if (!expiredIds.isEmpty()) {
+            cacheRebuildExecutor.submit(() -> {
+                try {
+                    writeWithLogicalExpire(keyPrefix, dbFallback.apply(expiredIds), time, unit);
+                } catch (Exception e) {
+                    log.error("批量重建缓存失败, keyPrefix={}, ids={}", keyPrefix, expiredIds, e);
+                } finally {
+                    expiredIds.forEach(id -> unLock(lockKeyPrefix + id));
+                }
+            });
+        }
+        return result;
+    }
+
+    private <R, ID> void writeWithLogicalExpire(String keyPrefix, Map<ID, R> data, Long time, TimeUnit unit) {
+        if (data.isEmpty()) {
+            return;
+        }
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            data.forEach((id, value) -> connection.stringCommands().set(rawKey(keyPrefix + id), encode(value, expireTime)));
+            return null;
+        });
+        data.keySet().forEach(id -> evictLocal(keyPrefix + id));
+    }
+
     // ✅ 推荐的CacheClient优化版本
     public <R, ID> Map<ID, R> batchQueryOptimized(
             String keyPrefix, Collection<ID> ids, Class<R> type,
             Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit) {
 
-        // 1. 批量获取缓存（字符串方式）
-        List<String> keys = ids.stream()
-                .map(id -> keyPrefix + id)
-                .collect(Collectors.toList());
+        // 1. 批量获取缓存（字节方式，兼容JSON和二进制格式）
+        byte[][] keys = ids.stream()
+                .map(id -> rawKey(keyPrefix + id))
+                .toArray(byte[][]::new);
 
-        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(keys));
 
         // 2. 处理缓存命中和未命中
         Map<ID, R> result = new HashMap<>();
         List<ID> missedIds = new ArrayList<>();
 
         Iterator<ID> idIterator = ids.iterator();
-        for (String value : values) {
+        for (byte[] value : values) {
             ID id = idIterator.next();
-            if (StringUtils.isNotBlank(value)) {
-                // 缓存命中：反序列化JSON
-                result.put(id, JSONUtil.toBean(value, type));
+            R cached = value != null && value.length > 0 ? decodeData(value, type) : null;
+            if (cached != null) {
+                // 缓存命中：反序列化
+                result.put(id, cached);
             } else {
                 // 缓存未命中：记录需要查数据库的ID
                 missedIds.add(id);
             }
         }
 
-        // 3. 批量写入缓存（Pipeline + 字符串）
+        // 3. 批量写入缓存（Pipeline + 字节）
         if (!missedIds.isEmpty()) {
             // 1. 批量查询数据库
             Map<ID, R> dbResult = dbFallback.apply(missedIds);
             // 2. Pipeline批量写入缓存
-            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
-                @Override
-                public Object execute(RedisOperations operations) throws DataAccessException {
-                    for (ID id : missedIds) {
-                        String key = keyPrefix + id;
-                        R data = dbResult.get(id);
-
-                        if (data != null) {
-                            // 🛡️ 防缓存雪崩：随机化TTL
-                            // 🎯 字符串方式存储，Redis中可读
-                            String value = JSONUtil.toJsonStr(data);
-                            // TTL随机化算法
-                            long randomTtl = time + (long) (Math.random() * time * 0.4 - time * 0.2);
-                            // 假设原始TTL = 30分钟
-                            // 随机范围：30 ± 6分钟 = 24-36分钟
-                            // 避免大量缓存同时过期
-                            Duration duration = Duration.of(randomTtl, unit.toChronoUnit());
-                            operations.opsForValue().set(key, value, duration);
-                            result.put(id, data);
-                        } else {
-                            // 🛡️ 防缓存穿透：缓存空值
-                            operations.opsForValue().set(key, "", Duration.ofMinutes(2));
-                        }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ID id : missedIds) {
+                    byte[] key = rawKey(keyPrefix + id);
+                    R data = dbResult.get(id);
+
+                    if (data != null) {
+                        // 🛡️ 防缓存雪崩：随机化TTL
+                        // 🎯 按配置的编解码器编码（json可读 / binary紧凑）
+                        byte[] value = encode(data, null);
+                        // TTL随机化算法
+                        long randomTtl = time + (long) (Math.random() * time * 0.4 - time * 0.2);
+                        // 假设原始TTL = 30分钟
+                        // 随机范围：30 ± 6分钟 = 24-36分钟
+                        // 避免大量缓存同时过期
+                        Duration duration = Duration.of(randomTtl, unit.toChronoUnit());
+                        connection.stringCommands().set(key, value, Expiration.from(duration),
+                                RedisStringCommands.SetOption.upsert());
+                        result.put(id, data);
+                    } else {
+                        // 🛡️ 防缓存穿透：缓存空值
+                        connection.stringCommands().set(key, new byte[0], Expiration.from(Duration.ofMinutes(2)),
+                                RedisStringCommands.SetOption.upsert());
                     }
-                    return null;
                 }
+                return null;
             });
         }
 
@@ -424,7 +714,7 @@ public class CacheClient {
                                 log.warn("缓存预热失败, id={}", id, e);
                             }
 
-                        }, CACHE_REBUILD_EXECUTOR)).toArray(CompletableFuture[]::new)
+                        }, cacheRebuildExecutor)).toArray(CompletableFuture[]::new)
         ).join();
 
     }
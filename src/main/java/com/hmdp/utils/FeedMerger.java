@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ScrollResult;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * 关注页多路归并（推拉结合）
+ * <p>
+ * 各数据源按 (时间戳降序, 博客id字典序降序) 有序，归并后与单个ZSET的 ZREVRANGEBYSCORE 顺序一致
+ */
+public class FeedMerger {
+
+    private static final Comparator<TypedTuple<String>> ORDER = Comparator
+            .comparing((TypedTuple<String> t) -> t.getScore()).reversed()
+            .thenComparing(TypedTuple::getValue, Comparator.reverseOrder());
+
+    /**
+     * 归并各数据源，去重后跳过前 offset 条，返回 count 条
+     * @param pages 各数据源 ZREVRANGEBYSCORE 的结果
+     * @param offset 上一页最小时间戳的博客数
+     * @param count 每页数量
+     * @return 当前页
+     */
+    public static List<TypedTuple<String>> merge(List<? extends Collection<TypedTuple<String>>> pages, int offset, int count) {
+        PriorityQueue<Map.Entry<TypedTuple<String>, Iterator<TypedTuple<String>>>> heap =
+                new PriorityQueue<>(Math.max(pages.size(), 1), Map.Entry.comparingByKey(ORDER));
+        for (Collection<TypedTuple<String>> page : pages) {
+            Iterator<TypedTuple<String>> it = page.iterator();
+            if (it.hasNext()) {
+                heap.add(new AbstractMap.SimpleEntry<>(it.next(), it));
+            }
+        }
+        List<TypedTuple<String>> merged = new ArrayList<>(count);
+        String last = null;
+        int skipped = 0;
+        while (!heap.isEmpty() && merged.size() < count) {
+            Map.Entry<TypedTuple<String>, Iterator<TypedTuple<String>>> head = heap.poll();
+            TypedTuple<String> tuple = head.getKey();
+            if (head.getValue().hasNext()) {
+                heap.add(new AbstractMap.SimpleEntry<>(head.getValue().next(), head.getValue()));
+            }
+            // 去重：同一篇博客在各个源中的时间戳相同，排序后相邻
+            if (tuple.getValue().equals(last)) {
+                continue;
+            }
+            last = tuple.getValue();
+            // 跳过上一页已经返回过的 offset 条
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            merged.add(tuple);
+        }
+        return merged;
+    }
+
+    /**
+     * 计算下一页的游标：本页最小时间戳，以及该时间戳的博客数
+     * <p>
+     * 整页的时间戳都等于 max 时，上一页跳过的 offset 条也要计入，否则下一页会重复返回
+     * @param page 当前页，不能为空
+     * @param max 本次查询的最大时间戳
+     * @param offset 本次查询跳过的条数
+     * @return 只包含 minTime 和 offset 的滚动分页结果
+     */
+    public static <T> ScrollResult<T> nextCursor(List<TypedTuple<String>> page, long max, int offset) {
+        long minTime = 0;
+        int ofs = 1;
+        for (TypedTuple<String> tuple : page) {
+            long time = Objects.requireNonNull(tuple.getScore()).longValue();
+            if (time == minTime) {
+                ofs++;
+            } else {
+                minTime = time;
+                ofs = 1;
+            }
+        }
+        if (minTime == max) {
+            ofs += offset;
+        }
+        ScrollResult<T> result = new ScrollResult<>();
+        result.setMinTime(minTime);
+        result.setOffset(ofs);
+        return result;
+    }
+}
@@ -0,0 +1,41 @@
+package com.hmdp.utils;
+
+/**
+ * 经纬度距离计算，与Redis GEO使用相同的地球半径和Haversine公式，结果与GEOSEARCH返回的距离一致
+ */
+public class GeoUtils {
+
+    // Redis geohelper.c 中的地球半径（米）
+    public static final double EARTH_RADIUS_METERS = 6372797.560856;
+    // 每纬度对应的米数
+    public static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+    // Redis GEO 支持的坐标范围（Web墨卡托投影的纬度上限）
+    public static final double MAX_LONGITUDE = 180;
+    public static final double MAX_LATITUDE = 85.05112878;
+
+    /**
+     * 坐标是否在Redis GEO支持的范围内
+     * @param x 经度
+     * @param y 纬度
+     * @return true:有效（NaN等非法值返回false）
+     */
+    public static boolean isValid(double x, double y) {
+        return x >= -MAX_LONGITUDE && x <= MAX_LONGITUDE && y >= -MAX_LATITUDE && y <= MAX_LATITUDE;
+    }
+
+    /**
+     * 两点间的距离
+     * @param x1 经度
+     * @param y1 纬度
+     * @param x2 经度
+     * @param y2 纬度
+     * @return 距离（米）
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+}
@@ -0,0 +1,181 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.dto.mapper.UserDTOMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登录会话本地缓存（token -> UserDTO），命中时不需要HGETALL
+ * <p>
+ * 退出登录时通过 LOGIN_TOKEN_INVALIDATE_CHANNEL 通知所有节点清除该token；
+ * 本地缓存存活时间很短，兜底token在Redis中过期的情况。
+ * <p>
+ * 有效期续期：懒续期模式下记录每个token在本节点最后一次续期的时间，距离上次续期超过 min-interval-seconds
+ * （即剩余有效期低于 TTL - min-interval-seconds）时才加入待续期集合，由后台线程定时用管道批量EXPIRE，
+ * 同一token的并发请求只会续期一次。
+ */
+@Slf4j
+@Component
+public class LoginSessionCache {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private UserDTOMapper userDTOMapper;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 本地缓存最大会话数
+    @Value("${hmdp.session.local.maximum-size:100000}")
+    private long maximumSize;
+
+    // 本地缓存存活时间（秒）
+    @Value("${hmdp.session.local.expire-seconds:30}")
+    private long expireSeconds;
+
+    // 懒续期：只在距离上次续期超过min-interval-seconds时才续期，关闭后每个请求都EXPIRE
+    @Value("${hmdp.session.refresh.lazy:true}")
+    private boolean lazyRefresh;
+
+    @Value("${hmdp.session.refresh.min-interval-seconds:600}")
+    private long refreshMinIntervalSeconds;
+
+    // 待续期token的批量刷新间隔（毫秒）
+    @Value("${hmdp.session.refresh.flush-millis:1000}")
+    private long refreshFlushMillis;
+
+    private Cache<String, UserDTO> sessions;
+    // token -> 本节点最后一次续期的时间（毫秒）
+    private Cache<String, Long> lastRefresh;
+    private final Set<String> pendingRefresh = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService refreshExecutor;
+
+    @PostConstruct
+    private void init() {
+        sessions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> sessions.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.LOGIN_TOKEN_INVALIDATE_CHANNEL));
+        if (!lazyRefresh) {
+            return;
+        }
+        lastRefresh = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(refreshMinIntervalSeconds, TimeUnit.SECONDS)
+                .build();
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "token-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refreshExecutor.scheduleWithFixedDelay(this::flushRefresh, refreshFlushMillis, refreshFlushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+            flushRefresh();
+        }
+    }
+
+    /**
+     * 请求使用了该token，按需续期
+     * @param token 登录令牌
+     */
+    public void touch(String token) {
+        if (!lazyRefresh) {
+            stringRedisTemplate.expire(RedisConstants.LOGIN_USER_KEY + token, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
+            return;
+        }
+        // 上次续期的记录在min-interval-seconds后过期，存在说明不需要续期
+        if (lastRefresh.getIfPresent(token) != null) {
+            return;
+        }
+        lastRefresh.put(token, System.currentTimeMillis());
+        pendingRefresh.add(token);
+    }
+
+    private void flushRefresh() {
+        if (pendingRefresh.isEmpty()) {
+            return;
+        }
+        List<String> tokens = new ArrayList<>(pendingRefresh.size());
+        for (Iterator<String> it = pendingRefresh.iterator(); it.hasNext(); ) {
+            tokens.add(it.next());
+            it.remove();
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                long seconds = TimeUnit.MINUTES.toSeconds(RedisConstants.LOGIN_USER_TTL);
+                tokens.forEach(token -> conn.expire(RedisConstants.LOGIN_USER_KEY + token, seconds));
+                return null;
+            });
+        } catch (Exception e) {
+            // 续期失败，清除续期记录，下次请求时重新续期
+            lastRefresh.invalidateAll(tokens);
+            log.warn("批量续期登录token失败, count={}", tokens.size(), e);
+        }
+    }
+
+    /**
+     * 查询登录用户
+     * @param token 登录令牌
+     * @return 用户信息，未登录或已过期时返回null
+     */
+    public UserDTO get(String token) {
+        UserDTO cached = sessions.getIfPresent(token);
+        if (cached != null) {
+            return cached;
+        }
+        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(RedisConstants.LOGIN_USER_KEY + token);
+        if (ObjectUtils.isEmpty(userMap)) {
+            return null;
+        }
+        UserDTO userDTO = userDTOMapper.fromHash(userMap);
+        sessions.put(token, userDTO);
+        return userDTO;
+    }
+
+    /**
+     * 退出登录：删除Redis中的会话并通知所有节点清除本地缓存
+     * @param token 登录令牌
+     * @return 是否删除成功
+     */
+    public boolean invalidate(String token) {
+        Boolean deleted = stringRedisTemplate.delete(RedisConstants.LOGIN_USER_KEY + token);
+        sessions.invalidate(token);
+        if (lazyRefresh) {
+            pendingRefresh.remove(token);
+            lastRefresh.invalidate(token);
+        }
+        stringRedisTemplate.convertAndSend(RedisConstants.LOGIN_TOKEN_INVALIDATE_CHANNEL, token);
+        return Boolean.TRUE.equals(deleted);
+    }
+}
@@ -5,6 +5,13 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "hm-DianPing:user:token:";
     public static final Long LOGIN_USER_TTL = 360000L;
+    // 登录会话失效广播频道（退出登录），消息内容为token
+    public static final String LOGIN_TOKEN_INVALIDATE_CHANNEL = "hm-DianPing:user:tokenInvalidate";
+    // 签名令牌撤销名单（ZSET，令牌id -> 过期时间秒）
+    public static final String LOGIN_TOKEN_REVOKED_KEY = "hm-DianPing:user:tokenRevoked";
+    // 用户公开资料缓存（id、昵称、头像）
+    public static final String CACHE_USER_PROFILE_KEY = "hm-DianPing:user:profile:";
+    public static final Long CACHE_USER_PROFILE_TTL = 30L;
 
     public static final Long CACHE_NULL_TTL = 2L;
 
@@ -12,16 +19,39 @@ public class RedisConstants {
     public static final String CACHE_SHOP_KEY = "hm-DianPing:shop:query:";
 
     public static final String CACHE_SHOP_TYPE_KEY = "hm-DianPing:shop:typeQuery:1";
+    // 本地缓存失效广播频道，消息内容为缓存key
+    public static final String CACHE_INVALIDATE_CHANNEL = "hm-DianPing:cache:invalidate";
 
     public static final String LOCK_SHOP_KEY = "hm-DianPing:lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String LOCK_ORDER_KEY = "hm-DianPing:lock:order:";
+    // 雪花算法workerId租约，后接workerId；以及各workerId最后发号时间（Hash）
+    public static final String ID_WORKER_KEY = "hm-DianPing:id:worker:";
+    public static final String ID_WORKER_LAST_KEY = "hm-DianPing:id:workerLast";
 
     public static final String SECKILL_TYPE_KEY = "hm-DianPing:seckill:type:";
+    // 秒杀券状态变更广播频道（售罄、新增），消息内容为优惠券id
+    public static final String SECKILL_STATE_CHANNEL = "hm-DianPing:seckill:state";
+    // 分段库存的段库存key和段订单集合key，后接 {优惠券id:段号}，每个段落在不同的hash slot
+    public static final String SECKILL_SEGMENT_STOCK_KEY = "hm-DianPing:seckill:segment:stock:";
+    public static final String SECKILL_SEGMENT_ORDER_KEY = "hm-DianPing:seckill:segment:order:";
+    // 分段库存的段订单队列，后接 {优惠券id:段号}，与段库存在同一个hash slot，扣减和下单消息在一个脚本中完成
+    public static final String SECKILL_SEGMENT_STREAM_KEY = "stream.orders";
+    // 所有段订单队列的集合，订单消费者据此读取各段队列
+    public static final String SECKILL_SEGMENT_STREAMS_KEY = "hm-DianPing:seckill:segment:streams";
     public static final String BLOG_LIKED_KEY = "hm-DianPing:blog:liked:";
     // 博客点赞数key，Hash结构的计数器
     public static final String BLOG_LIKED_COUNT_KEY = "hm-DianPing:blog:counter:count";
+    // 点赞数有变化、待刷回数据库的博客id集合
+    public static final String BLOG_LIKED_DIRTY_KEY = "hm-DianPing:blog:counter:dirty";
+    // 点赞数全量对账的HSCAN游标检查点，以及对账锁
+    public static final String BLOG_LIKED_SYNC_CURSOR_KEY = "hm-DianPing:blog:counter:syncCursor";
+    public static final String LOCK_BLOG_LIKE_SYNC_KEY = "hm-DianPing:lock:blogLikeSync";
+    // 热门博客排行榜（ZSET，score为点赞数，开启衰减时为衰减后的热度），衰减任务的互斥key，以及从数据库加载的标记（加载完成后永久保留）
+    public static final String BLOG_HOT_KEY = "hm-DianPing:blog:hot";
+    public static final String BLOG_HOT_DECAY_KEY = "hm-DianPing:blog:hotDecay";
+    public static final String BLOG_HOT_INIT_KEY = "hm-DianPing:blog:hotInit";
     // 用户发的博客记录
     public static final String BLOG_COUNTER_KEY = "hm-DianPing:blog:addCount:";
     // 博客记录key
@@ -33,9 +63,20 @@ public class RedisConstants {
 
     // 取关
     public static final String UN_FOLLOW_KEY = "hm-DianPing:follow:unUserFollow:";
+    // 关注事件（stream.follows）消费锁，集群中只有一个节点写入tb_follow
+    public static final String LOCK_FOLLOW_CONSUMER_KEY = "hm-DianPing:lock:followConsumer";
     public static final String FEED_KEY = "hm-DianPing:blog:feed:";
+    // 作者发件箱（ZSET，博客id -> 发布时间），粉丝数超过阈值的作者只写发件箱，由粉丝读取时拉取
+    public static final String BLOG_OUTBOX_KEY = "hm-DianPing:blog:outbox:";
+    // 只写发件箱的大V作者集合
+    public static final String BLOG_BIG_AUTHOR_KEY = "hm-DianPing:blog:bigAuthor";
+    // 收件箱整理任务的互斥key，以及最近一次统计结果（JSON）
+    public static final String FEED_COMPACT_LOCK_KEY = "hm-DianPing:blog:feedCompact";
+    public static final String FEED_METRICS_KEY = "hm-DianPing:blog:feedMetrics";
     // 博客推送给粉丝的key
     public static final String BLOG_PUSH_FANS_KEY = "hm-DianPing:blog:pushFans:";
+    // 博客推送进度（Hash：status、total、pushed）
+    public static final String BLOG_FANOUT_PROGRESS_KEY = "hm-DianPing:blog:fanout:";
     public static final String SHOP_GEO_KEY = "hm-DianPing:shop:geo:";
     public static final String USER_SIGN_KEY = "hm-DianPing:sign:";
 
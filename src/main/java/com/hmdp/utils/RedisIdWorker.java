@@ -1,13 +1,23 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+@Slf4j
 @Component
 public class RedisIdWorker {
     /**
@@ -18,23 +28,138 @@ public class RedisIdWorker {
      * 序列号位数
      */
     private static final int COUNT_BITS = 32;
+    private static final long SECONDS_PER_DAY = 86400L;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+    // 时间戳按本地时间计算（与原先 LocalDateTime.now().toEpochSecond(UTC) 一致）
+    private static final TimeZone ZONE = TimeZone.getDefault();
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+
+    // 是否开启号段模式：每次INCRBY预取一段序列号，本地发号
+    @Value("${hmdp.id.lease.enabled:false}")
+    private boolean leaseEnabled;
+
+    // 每个号段的大小
+    @Value("${hmdp.id.lease.block-size:1000}")
+    private long blockSize;
+
+    // 当前号段剩余比例低于该值时，异步预取下一个号段
+    @Value("${hmdp.id.lease.low-water-ratio:0.2}")
+    private double lowWaterRatio;
+
+    private final ConcurrentHashMap<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final ExecutorService leaseExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "id-lease");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 号段：[next, end]，只在所属的那一天使用，跨天后丢弃，保证同一天内序列号不重复
+     */
+    private static final class Segment {
+        private final long day;
+        private final AtomicLong next;
+        private final long end;
+
+        private Segment(long day, long start, long end) {
+            this.day = day;
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    /**
+     * 双号段缓冲：当前号段 + 预取的下一个号段
+     */
+    private static final class SegmentBuffer {
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean();
+        // 切换号段时可能同步访问Redis，使用ReentrantLock而不是synchronized，虚拟线程等待时不会钉住载体线程
+        private final ReentrantLock lock = new ReentrantLock();
+    }
+
     public long nextId(String keyPrefix) {
+        // 雪花算法模式：进程内发号，不访问Redis
+        if (snowflakeIdGenerator.isEnabled()) {
+            return snowflakeIdGenerator.nextId();
+        }
         //     1.生成时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
+        long millis = System.currentTimeMillis();
+        long nowSecond = (millis + ZONE.getOffset(millis)) / 1000;
         long timeStamp = nowSecond - BEGIN_TIMESTAMP;
+        long day = Math.floorDiv(nowSecond, SECONDS_PER_DAY);
         //     2.生成序列号
-        // 2.1获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2自增长
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        long count = leaseEnabled ? nextLeased(keyPrefix, day) : increment(keyPrefix, day, 1);
         //     3.拼接并返回
         return timeStamp << COUNT_BITS | count;
     }
 
+    /**
+     * 号段模式：从本地号段取号，号段耗尽时才同步访问Redis
+     */
+    private long nextLeased(String keyPrefix, long day) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, k -> new SegmentBuffer());
+        while (true) {
+            Segment segment = buffer.current;
+            if (segment != null && segment.day == day) {
+                long count = segment.next.getAndIncrement();
+                if (count <= segment.end) {
+                    // 低于水位时异步预取下一个号段
+                    if (segment.end - count < blockSize * lowWaterRatio && buffer.next == null
+                            && buffer.loading.compareAndSet(false, true)) {
+                        leaseExecutor.execute(() -> prefetch(keyPrefix, buffer, day));
+                    }
+                    return count;
+                }
+            }
+            // 当前号段已耗尽或已跨天：切换到预取的号段，没有则同步申请
+            buffer.lock.lock();
+            try {
+                if (buffer.current == segment) {
+                    Segment next = buffer.next;
+                    buffer.next = null;
+                    buffer.current = next != null && next.day == day ? next : lease(keyPrefix, day);
+                }
+            } finally {
+                buffer.lock.unlock();
+            }
+        }
+    }
+
+    private void prefetch(String keyPrefix, SegmentBuffer buffer, long day) {
+        try {
+            buffer.next = lease(keyPrefix, day);
+        } catch (Exception e) {
+            log.error("预取号段失败, keyPrefix={}", keyPrefix, e);
+        } finally {
+            buffer.loading.set(false);
+        }
+    }
+
+    private Segment lease(String keyPrefix, long day) {
+        long end = increment(keyPrefix, day, blockSize);
+        return new Segment(day, end - blockSize + 1, end);
+    }
+
+    private long increment(String keyPrefix, long day, long delta) {
+        // 2.1当前日期，精确到天
+        String date = LocalDate.ofEpochDay(day).format(DATE_FORMATTER);
+        // 2.2自增长
+        return stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date, delta);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        leaseExecutor.shutdownNow();
+    }
+
     // public static void main(String[] args) {
     //     LocalDateTime time = LocalDateTime.of(2022, 1, 1, 0, 0, 0);
     //     long second = time.toEpochSecond(ZoneOffset.UTC);
@@ -20,5 +20,13 @@ public abstract class RegexPatterns {
      * 验证码正则, 6位数字或字母
      */
     public static final String VERIFY_CODE_REGEX = "^[a-zA-Z\\d]{6}$";
+    /**
+     * 共同关注游标正则，被扫描的用户id:SSCAN游标
+     */
+    public static final String FOLLOW_CURSOR_REGEX = "^\\d{1,18}:\\d{1,20}$";
+    /**
+     * 附近商铺游标正则，距离(米，Double.toString格式):商铺id
+     */
+    public static final String SHOP_CURSOR_REGEX = "^\\d{1,20}(\\.\\d{1,20})?(E-?\\d{1,3})?:\\d{1,18}$";
 
 }
@@ -32,6 +32,24 @@ public class RegexUtils {
         return mismatch(code, RegexPatterns.VERIFY_CODE_REGEX);
     }
 
+    /**
+     * 是否是无效共同关注游标格式
+     * @param cursor 要校验的游标
+     * @return true:符合，false：不符合
+     */
+    public static boolean isFollowCursorInvalid(String cursor){
+        return mismatch(cursor, RegexPatterns.FOLLOW_CURSOR_REGEX);
+    }
+
+    /**
+     * 是否是无效附近商铺游标格式
+     * @param cursor 要校验的游标
+     * @return true:符合，false：不符合
+     */
+    public static boolean isShopCursorInvalid(String cursor){
+        return mismatch(cursor, RegexPatterns.SHOP_CURSOR_REGEX);
+    }
+
     // 校验是否不符合正则格式
     private static boolean mismatch(String str, String regex){
         if (StrUtil.isBlank(str)) {
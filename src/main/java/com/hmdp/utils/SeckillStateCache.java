@@ -0,0 +1,303 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀券本地状态缓存，在执行seckill.lua之前做本地预检
+ * <p>
+ * 状态从 SECKILL_TYPE_KEY 的Hash中加载，售罄或新增秒杀券时通过Redis发布订阅通知各节点重新加载。
+ * 每个节点还持有一个库存令牌桶，大小为加载时的剩余库存：一个节点成功下单的数量不可能超过总库存，
+ * 因此令牌耗尽时直接拒绝，不再访问Redis。
+ */
+@Slf4j
+@Component
+public class SeckillStateCache {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 是否开启本地预检（分段库存的段数和秒杀时间总是从本地状态读取）
+    @Value("${hmdp.seckill.gate.enabled:false}")
+    private boolean enabled;
+
+    // 本地状态的最长存活时间，到期后从Redis重新加载
+    @Value("${hmdp.seckill.gate.refresh-seconds:30}")
+    private long refreshSeconds;
+
+    // 非秒杀券的本地缓存时间，避免普通优惠券每次都HMGET
+    @Value("${hmdp.seckill.gate.miss-seconds:5}")
+    private long missSeconds;
+
+    private Cache<Long, VoucherState> states;
+
+    // 不是秒杀券（或尚未写入Redis）的占位状态
+    private static final VoucherState NOT_SECKILL = new VoucherState();
+
+    /**
+     * 预检结果
+     */
+    public enum Admission {
+        // 已获取本地令牌，Lua执行失败时需要调用release归还
+        ACQUIRED,
+        // 本地没有该券的状态，直接交给Lua判断
+        PASS,
+        NOT_STARTED,
+        ENDED,
+        SOLD_OUT,
+        // 本节点令牌已用完
+        BUSY
+    }
+
+    private static class VoucherState {
+        private LocalDateTime beginTime;
+        private LocalDateTime endTime;
+        // 分段库存的段数，0表示未分段
+        private int segments;
+        private volatile boolean soldOut;
+        private final AtomicInteger tokens = new AtomicInteger();
+    }
+
+    /**
+     * 分段库存的段库存key
+     * @param voucherId 优惠券id
+     * @param segment 段号
+     * @return key
+     */
+    public static String segmentStockKey(Long voucherId, int segment) {
+        return RedisConstants.SECKILL_SEGMENT_STOCK_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+
+    /**
+     * 分段库存的段订单集合key
+     * @param voucherId 优惠券id
+     * @param segment 段号
+     * @return key
+     */
+    public static String segmentOrderKey(Long voucherId, int segment) {
+        return RedisConstants.SECKILL_SEGMENT_ORDER_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+
+    /**
+     * 分段库存的段订单队列key
+     * @param voucherId 优惠券id
+     * @param segment 段号
+     * @return key
+     */
+    public static String segmentStreamKey(Long voucherId, int segment) {
+        return RedisConstants.SECKILL_SEGMENT_STREAM_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+
+    @PostConstruct
+    private void init() {
+        states = Caffeine.newBuilder()
+                .expireAfter(new Expiry<Long, VoucherState>() {
+                    @Override
+                    public long expireAfterCreate(Long voucherId, VoucherState state, long currentTime) {
+                        return TimeUnit.SECONDS.toNanos(state == NOT_SECKILL ? missSeconds : refreshSeconds);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long voucherId, VoucherState state, long currentTime, long currentDuration) {
+                        return expireAfterCreate(voucherId, state, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long voucherId, VoucherState state, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        // 其他节点售罄或新增秒杀券时，清除本地状态，下次请求重新加载
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> states.invalidate(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(RedisConstants.SECKILL_STATE_CHANNEL));
+        log.info("秒杀本地状态缓存已初始化, 预检={}, refresh={}s", enabled, refreshSeconds);
+    }
+
+    /**
+     * 本地预检并获取令牌
+     * @param voucherId 优惠券id
+     * @return 预检结果
+     */
+    public Admission tryAcquire(Long voucherId) {
+        if (!enabled) {
+            return Admission.PASS;
+        }
+        // 不存在时从Redis加载，加载结果为null时不缓存
+        VoucherState state = stateOf(voucherId);
+        if (state == null || state == NOT_SECKILL) {
+            return Admission.PASS;
+        }
+        if (state.soldOut) {
+            return Admission.SOLD_OUT;
+        }
+        Admission time = checkTime(state);
+        if (time != Admission.PASS) {
+            return time;
+        }
+        while (true) {
+            int tokens = state.tokens.get();
+            if (tokens <= 0) {
+                return Admission.BUSY;
+            }
+            if (state.tokens.compareAndSet(tokens, tokens - 1)) {
+                return Admission.ACQUIRED;
+            }
+        }
+    }
+
+    /**
+     * 秒杀时间校验，不受预检开关影响
+     * @param voucherId 优惠券id
+     * @return NOT_STARTED、ENDED 或 PASS
+     */
+    public Admission checkTime(Long voucherId) {
+        VoucherState state = stateOf(voucherId);
+        return state == null || state == NOT_SECKILL ? Admission.PASS : checkTime(state);
+    }
+
+    /**
+     * 分段库存的段数
+     * <p>
+     * 本地状态加载失败时直接读取Redis中的段数，Redis异常向上抛出，不能按未分段处理走seckill.lua
+     * @param voucherId 优惠券id
+     * @return 段数，0表示未分段
+     */
+    public int segmentsOf(Long voucherId) {
+        VoucherState state = stateOf(voucherId);
+        if (state == NOT_SECKILL) {
+            return 0;
+        }
+        if (state != null) {
+            return state.segments;
+        }
+        Object segments = stringRedisTemplate.opsForHash().get(RedisConstants.SECKILL_TYPE_KEY + voucherId, "segments");
+        return segments == null ? 0 : Integer.parseInt(segments.toString());
+    }
+
+    /**
+     * 归还令牌（Lua判定没有购买资格时）
+     * @param voucherId 优惠券id
+     */
+    public void release(Long voucherId) {
+        VoucherState state = states.getIfPresent(voucherId);
+        if (state != null && state != NOT_SECKILL) {
+            state.tokens.incrementAndGet();
+        }
+    }
+
+    /**
+     * Lua返回库存不足：本地标记售罄并通知其他节点
+     * @param voucherId 优惠券id
+     */
+    public void markSoldOut(Long voucherId) {
+        VoucherState state = states.getIfPresent(voucherId);
+        if (state != null && state != NOT_SECKILL) {
+            state.soldOut = true;
+        }
+        publishChange(voucherId);
+    }
+
+    /**
+     * 通知所有节点重新加载该券的状态
+     * @param voucherId 优惠券id
+     */
+    public void publishChange(Long voucherId) {
+        stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_STATE_CHANNEL, voucherId.toString());
+    }
+
+    private Admission checkTime(VoucherState state) {
+        LocalDateTime now = LocalDateTime.now();
+        if (state.beginTime != null && state.beginTime.isAfter(now)) {
+            return Admission.NOT_STARTED;
+        }
+        if (state.endTime != null && state.endTime.isBefore(now)) {
+            return Admission.ENDED;
+        }
+        return Admission.PASS;
+    }
+
+    /**
+     * 查询本地状态，不存在时从Redis加载
+     * <p>
+     * 不使用 Cache.get(key, loader)：加载函数在ConcurrentHashMap.compute中执行，访问Redis期间持有桶锁，
+     * 虚拟线程模式下会钉住载体线程。这里在锁外加载，并发加载时以先写入的为准，保证令牌计数只有一份
+     */
+    private VoucherState stateOf(Long voucherId) {
+        VoucherState state = states.getIfPresent(voucherId);
+        if (state != null) {
+            return state;
+        }
+        VoucherState loaded = load(voucherId);
+        if (loaded == null) {
+            return null;
+        }
+        VoucherState existing = states.asMap().putIfAbsent(voucherId, loaded);
+        return existing == null ? loaded : existing;
+    }
+
+    private VoucherState load(Long voucherId) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(RedisConstants.SECKILL_TYPE_KEY + voucherId,
+                Arrays.asList("beginTime", "endTime", "stock", "segments"));
+        if (values.get(2) == null) {
+            // 不是秒杀券或尚未写入Redis，缓存占位状态（新增秒杀券时会通知各节点清除）
+            return NOT_SECKILL;
+        }
+        VoucherState state = new VoucherState();
+        try {
+            state.beginTime = values.get(0) == null ? null : LocalDateTime.parse(values.get(0).toString());
+            state.endTime = values.get(1) == null ? null : LocalDateTime.parse(values.get(1).toString());
+            state.segments = values.get(3) == null ? 0 : Integer.parseInt(values.get(3).toString());
+        } catch (RuntimeException e) {
+            log.warn("解析秒杀券状态失败, voucherId={}, values={}", voucherId, values, e);
+            return null;
+        }
+        // 汇总分段库存时的Redis异常向上抛出，不缓存错误的状态
+        int stock = state.segments > 1 ? sumSegmentStock(voucherId, state.segments) : Integer.parseInt(values.get(2).toString());
+        state.soldOut = stock <= 0;
+        state.tokens.set(Math.max(stock, 0));
+        return state;
+    }
+
+    /**
+     * 分段库存时主Hash中的stock为0，剩余库存需要汇总各段（各段不在同一个slot，使用管道逐个GET）
+     */
+    private int sumSegmentStock(Long voucherId, int segments) {
+        List<Object> stocks = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < segments; i++) {
+                conn.get(segmentStockKey(voucherId, i));
+            }
+            return null;
+        });
+        int sum = 0;
+        for (Object stock : stocks) {
+            if (stock != null) {
+                sum += Math.max(Integer.parseInt(stock.toString()), 0);
+            }
+        }
+        return sum;
+    }
+}
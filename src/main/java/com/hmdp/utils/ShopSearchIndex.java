@@ -0,0 +1,220 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 商铺名称/地址的进程内倒排索引，替代 LIKE '%name%' 全表扫描
+ * <p>
+ * 按字切分：每个字（单字查询）和相邻两个字（多字查询）各是一个词项，中文不需要分词器。
+ * 多字查询先对各二元词项的倒排表求交集，再校验原文是否包含关键字，结果与 LIKE 一致。
+ * 启动时按id分批扫描 tb_shop 建立索引；其他节点通过 CACHE_INVALIDATE_CHANNEL 收到商铺变更后重新加载该商铺。
+ */
+@Slf4j
+@Component
+public class ShopSearchIndex {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 是否开启商铺名称倒排索引
+    @Value("${hmdp.shop.search.enabled:false}")
+    private boolean enabled;
+
+    // 加载完成后才对外提供查询
+    @Getter
+    private volatile boolean ready;
+
+    // 商铺id -> 规范化后的名称和地址
+    private final ConcurrentHashMap<Long, ShopDoc> docs = new ConcurrentHashMap<>();
+    // 词项 -> 商铺id
+    private final ConcurrentHashMap<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    private record ShopDoc(long id, String name, String address) {
+    }
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        // 先订阅再加载，加载期间的变更不会丢失
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (key.startsWith(RedisConstants.CACHE_SHOP_KEY)) {
+                reload(Long.valueOf(key.substring(RedisConstants.CACHE_SHOP_KEY.length())));
+            }
+        }, new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+        try {
+            // 按id分批扫描，只查询id、name、address
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "name", "address")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + LOAD_BATCH_SIZE));
+                shops.forEach(this::upsert);
+                if (shops.size() < LOAD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            ready = true;
+            log.info("商铺名称索引加载完成: shops={}, terms={}", docs.size(), postings.size());
+        } catch (Exception e) {
+            log.error("商铺名称索引加载失败，使用数据库查询", e);
+        }
+    }
+
+    /**
+     * 新增或更新商铺
+     * @param shop 商铺，需要包含id、name、address
+     */
+    public synchronized void upsert(Shop shop) {
+        if (!enabled) {
+            return;
+        }
+        remove(shop.getId());
+        ShopDoc doc = new ShopDoc(shop.getId(), normalize(shop.getName()), normalize(shop.getAddress()));
+        docs.put(doc.id(), doc);
+        for (String term : terms(doc)) {
+            postings.computeIfAbsent(term, k -> ConcurrentHashMap.newKeySet()).add(doc.id());
+        }
+    }
+
+    /**
+     * 从索引中移除商铺
+     * @param shopId 商铺id
+     */
+    public synchronized void remove(Long shopId) {
+        ShopDoc old = docs.remove(shopId);
+        if (old == null) {
+            return;
+        }
+        for (String term : terms(old)) {
+            Set<Long> ids = postings.get(term);
+            if (ids != null) {
+                ids.remove(shopId);
+                if (ids.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按关键字搜索，名称命中排在地址命中之前，名称以关键字开头、名称越短越靠前
+     * @param keyword 关键字
+     * @param current 页码
+     * @param pageSize 每页数量
+     * @return 当前页的商铺id
+     */
+    public List<Long> search(String keyword, int current, int pageSize) {
+        String query = normalize(keyword);
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.候选集：单字查单字词项，多字对所有二元词项求交集（从最短的倒排表开始）
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String term : queryTerms(query)) {
+            Set<Long> ids = postings.get(term);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        // 2.校验原文包含关键字并打分
+        List<long[]> scored = new ArrayList<>();
+        for (Long id : lists.get(0)) {
+            if (!containsAll(lists, id)) {
+                continue;
+            }
+            ShopDoc doc = docs.get(id);
+            if (doc == null) {
+                continue;
+            }
+            int score = doc.name().startsWith(query) ? 3 : doc.name().contains(query) ? 2 : doc.address().contains(query) ? 1 : 0;
+            if (score > 0) {
+                scored.add(new long[]{id, score, doc.name().length()});
+            }
+        }
+        scored.sort(Comparator.<long[]>comparingLong(s -> -s[1]).thenComparingLong(s -> s[2]).thenComparingLong(s -> s[0]));
+        // 3.分页
+        int from = (current - 1) * pageSize;
+        if (scored.size() <= from) {
+            return Collections.emptyList();
+        }
+        return scored.subList(from, Math.min(from + pageSize, scored.size())).stream().map(s -> s[0]).toList();
+    }
+
+    private static boolean containsAll(List<Set<Long>> lists, Long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reload(Long shopId) {
+        try {
+            Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>().select("id", "name", "address").eq("id", shopId));
+            if (shop == null) {
+                remove(shopId);
+            } else {
+                upsert(shop);
+            }
+        } catch (Exception e) {
+            log.warn("重新加载商铺名称索引失败, shopId={}", shopId, e);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // 文档词项：名称和地址的所有单字和二元组
+    private static Set<String> terms(ShopDoc doc) {
+        Set<String> terms = new HashSet<>();
+        for (String text : new String[]{doc.name(), doc.address()}) {
+            for (int i = 0; i < text.length(); i++) {
+                terms.add(text.substring(i, i + 1));
+                if (i + 1 < text.length()) {
+                    terms.add(text.substring(i, i + 2));
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static Set<String> queryTerms(String query) {
+        if (query.length() == 1) {
+            return Collections.singleton(query);
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        for (int i = 0; i + 1 < query.length(); i++) {
+            terms.add(query.substring(i, i + 2));
+        }
+        return terms;
+    }
+}
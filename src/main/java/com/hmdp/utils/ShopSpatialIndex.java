@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 商铺坐标的进程内空间索引：按 typeId 分区的均匀网格，附近商铺查询不访问Redis
+ * <p>
+ * 启动时从 tb_shop 加载 id、type_id、x、y；本节点新增/更新商铺时直接更新，
+ * 其他节点通过 CACHE_INVALIDATE_CHANNEL 收到商铺缓存失效消息后从数据库重新加载该商铺。
+ * 未开启或加载失败时由 SHOP_GEO_KEY（Redis GEO）兜底。
+ */
+@Slf4j
+@Component
+public class ShopSpatialIndex {
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 是否开启进程内空间索引
+    @Value("${hmdp.shop.index.enabled:false}")
+    private boolean enabled;
+
+    // 网格边长（米），约为常用搜索半径的1/5
+    @Value("${hmdp.shop.index.cell-meters:1000}")
+    private double cellMeters;
+
+    // 加载完成后才对外提供查询
+    @Getter
+    private volatile boolean ready;
+
+    private double cellDegrees;
+
+    // 商铺id -> 坐标，用于更新时找到原来所在的网格
+    private final ConcurrentHashMap<Long, ShopPoint> points = new ConcurrentHashMap<>();
+    // typeId -> 网格 -> 网格内的商铺
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<Long, Map<Long, ShopPoint>>> grids = new ConcurrentHashMap<>();
+
+    private record ShopPoint(long id, long typeId, double x, double y) {
+    }
+
+    /**
+     * 查询结果：商铺id + 距离（米）
+     */
+    public record Hit(long id, double distance) {
+    }
+
+    public static final Comparator<Hit> HIT_ORDER =
+            Comparator.comparingDouble(Hit::distance).thenComparingLong(Hit::id);
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        cellDegrees = cellMeters / GeoUtils.METERS_PER_DEGREE;
+        // 先订阅再加载，加载期间的变更不会丢失
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (key.startsWith(RedisConstants.CACHE_SHOP_KEY)) {
+                reload(Long.valueOf(key.substring(RedisConstants.CACHE_SHOP_KEY.length())));
+            }
+        }, new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+        try {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>().select("id", "type_id", "x", "y"));
+            shops.forEach(this::upsert);
+            ready = true;
+            log.info("商铺空间索引加载完成: shops={}, types={}, cellMeters={}", points.size(), grids.size(), cellMeters);
+        } catch (Exception e) {
+            log.error("商铺空间索引加载失败，使用Redis GEO查询", e);
+        }
+    }
+
+    /**
+     * 新增或更新商铺坐标（坐标或类型为空时从索引中移除）
+     * @param shop 商铺，需要包含id、typeId、x、y
+     */
+    public synchronized void upsert(Shop shop) {
+        if (!enabled) {
+            return;
+        }
+        remove(shop.getId());
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        ShopPoint point = new ShopPoint(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+        points.put(point.id(), point);
+        grids.computeIfAbsent(point.typeId(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(cellOf(point.x(), point.y()), k -> new ConcurrentHashMap<>())
+                .put(point.id(), point);
+    }
+
+    /**
+     * 从索引中移除商铺
+     * @param shopId 商铺id
+     */
+    public synchronized void remove(Long shopId) {
+        ShopPoint old = points.remove(shopId);
+        if (old == null) {
+            return;
+        }
+        Map<Long, Map<Long, ShopPoint>> grid = grids.get(old.typeId());
+        if (grid != null) {
+            Map<Long, ShopPoint> cell = grid.get(cellOf(old.x(), old.y()));
+            if (cell != null) {
+                cell.remove(shopId);
+            }
+        }
+    }
+
+    /**
+     * 查询半径内的商铺
+     * @param typeId 商铺类型
+     * @param x 经度
+     * @param y 纬度
+     * @param radiusMeters 半径（米）
+     * @return 按距离、id升序的结果
+     */
+    public List<Hit> search(long typeId, double x, double y, double radiusMeters) {
+        Map<Long, Map<Long, ShopPoint>> grid = grids.get(typeId);
+        if (grid == null) {
+            return Collections.emptyList();
+        }
+        // 1.半径对应的经纬度范围（经度方向按纬度收缩）
+        double dy = radiusMeters / GeoUtils.METERS_PER_DEGREE;
+        double dx = dy / Math.max(Math.cos(Math.toRadians(y)), 1e-6);
+        long minX = (long) Math.floor((x - dx) / cellDegrees);
+        long maxX = (long) Math.floor((x + dx) / cellDegrees);
+        // 高纬度时经度范围可能超过一整圈，最多遍历 [-180, 180] 内的网格
+        long westmost = (long) Math.floor(-GeoUtils.MAX_LONGITUDE / cellDegrees);
+        long eastmost = (long) Math.floor(GeoUtils.MAX_LONGITUDE / cellDegrees);
+        minX = Math.max(minX, westmost);
+        maxX = Math.min(maxX, eastmost);
+        long minY = (long) Math.floor((y - dy) / cellDegrees);
+        long maxY = (long) Math.floor((y + dy) / cellDegrees);
+        // 2.遍历覆盖范围内的网格，计算精确距离
+        List<Hit> hits = new ArrayList<>();
+        for (long cx = minX; cx <= maxX; cx++) {
+            for (long cy = minY; cy <= maxY; cy++) {
+                Map<Long, ShopPoint> cell = grid.get(cellKey(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (ShopPoint point : cell.values()) {
+                    double distance = GeoUtils.distance(x, y, point.x(), point.y());
+                    if (distance <= radiusMeters) {
+                        hits.add(new Hit(point.id(), distance));
+                    }
+                }
+            }
+        }
+        hits.sort(HIT_ORDER);
+        return hits;
+    }
+
+    private void reload(Long shopId) {
+        try {
+            Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>().select("id", "type_id", "x", "y").eq("id", shopId));
+            if (shop == null) {
+                remove(shopId);
+            } else {
+                upsert(shop);
+            }
+        } catch (Exception e) {
+            log.warn("重新加载商铺坐标失败, shopId={}", shopId, e);
+        }
+    }
+
+    private long cellOf(double x, double y) {
+        return cellKey((long) Math.floor(x / cellDegrees), (long) Math.floor(y / cellDegrees));
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return cx << 32 | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,205 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.hmdp.dto.UserDTO;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无状态签名令牌：base64url(claims).base64url(HMAC-SHA256(claims))，claims中保存UserDTO字段、过期时间和令牌id
+ * <p>
+ * 校验只需要计算签名，不访问Redis。退出登录时把令牌id写入Redis撤销名单（ZSET，score为过期时间），
+ * 并通过 LOGIN_TOKEN_INVALIDATE_CHANNEL 通知各节点加入本地撤销名单；节点启动时从Redis加载未过期的撤销记录。
+ * 所有节点必须配置相同的密钥。
+ */
+@Slf4j
+@Component
+public class SignedTokenManager {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 是否使用签名令牌代替Redis会话
+    @Getter
+    @Value("${hmdp.session.token.signed:false}")
+    private boolean enabled;
+
+    // 签名密钥，至少32字节
+    @Value("${hmdp.session.token.secret:}")
+    private String secret;
+
+    // 令牌有效期（分钟），签名令牌不续期
+    @Value("${hmdp.session.token.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    private Mac prototype;
+
+    // 本地撤销名单：令牌id -> 过期时间（秒），令牌过期后自动移除
+    private Cache<String, Long> revoked;
+
+    @PostConstruct
+    private void init() throws GeneralSecurityException {
+        if (!enabled) {
+            return;
+        }
+        byte[] key = secret.getBytes(StandardCharsets.UTF_8);
+        if (key.length < 32) {
+            throw new IllegalStateException("hmdp.session.token.secret 至少需要32字节");
+        }
+        prototype = Mac.getInstance(ALGORITHM);
+        prototype.init(new SecretKeySpec(key, ALGORITHM));
+        revoked = Caffeine.newBuilder()
+                .expireAfter(new Expiry<String, Long>() {
+                    @Override
+                    public long expireAfterCreate(String jti, Long exp, long currentTime) {
+                        return TimeUnit.SECONDS.toNanos(Math.max(exp - System.currentTimeMillis() / 1000, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String jti, Long exp, long currentTime, long currentDuration) {
+                        return expireAfterCreate(jti, exp, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String jti, Long exp, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        // 其他节点退出登录
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            JSONObject claims = verifyClaims(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (claims != null) {
+                revoked.put(claims.getStr("j"), claims.getLong("e"));
+            }
+        }, new ChannelTopic(RedisConstants.LOGIN_TOKEN_INVALIDATE_CHANNEL));
+        // 加载未过期的撤销记录，并清理已过期的
+        long now = System.currentTimeMillis() / 1000;
+        stringRedisTemplate.opsForZSet().removeRangeByScore(RedisConstants.LOGIN_TOKEN_REVOKED_KEY, 0, now);
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(RedisConstants.LOGIN_TOKEN_REVOKED_KEY, now, Double.MAX_VALUE);
+        if (tuples != null) {
+            tuples.forEach(t -> revoked.put(t.getValue(), t.getScore().longValue()));
+        }
+        log.info("签名令牌模式已开启: ttl={}min, revoked={}", ttlMinutes, revoked.estimatedSize());
+    }
+
+    /**
+     * 签发令牌
+     * @param userDTO 用户信息
+     * @return 令牌
+     */
+    public String issue(UserDTO userDTO) {
+        JSONObject claims = new JSONObject();
+        claims.set("i", userDTO.getId());
+        claims.set("n", userDTO.getNickName());
+        claims.set("c", userDTO.getIcon());
+        claims.set("e", System.currentTimeMillis() / 1000 + TimeUnit.MINUTES.toSeconds(ttlMinutes));
+        claims.set("j", UUID.randomUUID().toString(true));
+        String payload = ENCODER.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * 校验令牌
+     * @param token 令牌
+     * @return 用户信息，签名错误、已过期或已撤销时返回null
+     */
+    public UserDTO verify(String token) {
+        JSONObject claims = verifyClaims(token);
+        if (claims == null || revoked.getIfPresent(claims.getStr("j")) != null) {
+            return null;
+        }
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(claims.getLong("i"));
+        userDTO.setNickName(claims.getStr("n"));
+        userDTO.setIcon(claims.getStr("c"));
+        return userDTO;
+    }
+
+    /**
+     * 撤销令牌（退出登录）
+     * @param token 令牌
+     * @return 是否撤销成功
+     */
+    public boolean revoke(String token) {
+        JSONObject claims = verifyClaims(token);
+        if (claims == null) {
+            return false;
+        }
+        String jti = claims.getStr("j");
+        Long exp = claims.getLong("e");
+        revoked.put(jti, exp);
+        // 写入撤销记录，同时清理已过期的记录（过期令牌本身就无法通过校验），避免撤销集合无限增长
+        long now = System.currentTimeMillis() / 1000;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.zAdd(RedisConstants.LOGIN_TOKEN_REVOKED_KEY, exp, jti);
+            conn.zRemRangeByScore(RedisConstants.LOGIN_TOKEN_REVOKED_KEY, 0, now);
+            return null;
+        });
+        stringRedisTemplate.convertAndSend(RedisConstants.LOGIN_TOKEN_INVALIDATE_CHANNEL, token);
+        return true;
+    }
+
+    // 校验签名和过期时间，返回claims
+    private JSONObject verifyClaims(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            String payload = token.substring(0, dot);
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(sign(payload), signature)) {
+                return null;
+            }
+            JSONObject claims = JSONUtil.parseObj(new String(DECODER.decode(payload), StandardCharsets.UTF_8));
+            Long exp = claims.getLong("e");
+            return exp != null && exp > System.currentTimeMillis() / 1000 ? claims : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            // Mac不是线程安全的，每次从初始化好的原型复制
+            Mac mac = (Mac) prototype.clone();
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
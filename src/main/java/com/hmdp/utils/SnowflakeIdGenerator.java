@@ -0,0 +1,198 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内雪花算法发号器，发号过程不访问Redis
+ * <p>
+ * 格式：秒级时间戳(32位，起点与 RedisIdWorker 相同) | 毫秒(10位) | workerId(10位) | 序列号(12位)
+ * <br>
+ * 高32位与 RedisIdWorker 的Redis模式一致，新旧订单id可以按时间比较。两种模式不要在集群中同时使用。
+ * workerId启动时从Redis租用，通过心跳续期；租约过期后拒绝发号，避免与其他节点重复。
+ */
+@Slf4j
+@Component
+public class SnowflakeIdGenerator {
+
+    private static final long BEGIN_TIMESTAMP = 1640995200L;
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_WORKER = (1 << WORKER_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final TimeZone ZONE = TimeZone.getDefault();
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("workerRenew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 是否开启雪花算法模式
+    @Getter
+    @Value("${hmdp.id.snowflake.enabled:false}")
+    private boolean enabled;
+
+    // workerId租约时长，心跳间隔为其1/3
+    @Value("${hmdp.id.snowflake.lease-seconds:30}")
+    private long leaseSeconds;
+
+    // 时钟回拨超过该值时打印告警（回拨期间沿用上次的时间继续发号）
+    @Value("${hmdp.id.snowflake.max-backward-millis:5000}")
+    private long maxBackwardMillis;
+
+    private final String nodeId = UUID.randomUUID().toString(true);
+    private ScheduledExecutorService heartbeatExecutor;
+
+    private volatile long workerId = -1;
+    private volatile long leaseValidUntil;
+    // 以下字段只在synchronized中访问，synchronized块内不访问Redis
+    private long lastMillis;
+    private long sequence;
+    private long lastWarnMillis;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        acquireLease();
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snowflake-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(leaseSeconds / 3, 1);
+        heartbeatExecutor.scheduleAtFixedRate(this::heartbeat, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 生成id
+     * @return id
+     */
+    public synchronized long nextId() {
+        long millis = System.currentTimeMillis();
+        if (millis > leaseValidUntil) {
+            throw new IllegalStateException("雪花算法workerId租约已过期, workerId=" + workerId);
+        }
+        // 与RedisIdWorker一致，按本地时间计算
+        long now = millis + ZONE.getOffset(millis);
+        if (now > lastMillis) {
+            lastMillis = now;
+            sequence = 0;
+        } else {
+            if (lastMillis - now > maxBackwardMillis && millis - lastWarnMillis > 1000) {
+                lastWarnMillis = millis;
+                log.warn("检测到时钟回拨 {}ms，沿用上次的时间继续发号", lastMillis - now);
+            }
+            // 同一毫秒或时钟回拨：序列号递增，用完后借用下一毫秒
+            if (++sequence > MAX_SEQUENCE) {
+                lastMillis++;
+                sequence = 0;
+            }
+        }
+        long second = lastMillis / 1000 - BEGIN_TIMESTAMP;
+        return second << 32 | (lastMillis % 1000) << (WORKER_BITS + SEQUENCE_BITS) | workerId << SEQUENCE_BITS | sequence;
+    }
+
+    /**
+     * 从随机位置开始尝试租用一个空闲的workerId
+     * <p>
+     * 最多1024次SET NX在锁外执行，只在发布workerId和租约时短暂持有锁，租用期间nextId不会被阻塞
+     */
+    private void acquireLease() {
+        int start = ThreadLocalRandom.current().nextInt(MAX_WORKER + 1);
+        for (int i = 0; i <= MAX_WORKER; i++) {
+            int id = (start + i) & MAX_WORKER;
+            // 以SET NX之前的时间计算租约，保证本地认为的租约不晚于Redis中的过期时间
+            long acquiredAt = System.currentTimeMillis();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(RedisConstants.ID_WORKER_KEY + id, nodeId, leaseSeconds, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                // 上一个持有者可能在时钟回拨后发过号，从它最后的时间+租约时长开始，保证不重复
+                Object last = stringRedisTemplate.opsForHash().get(RedisConstants.ID_WORKER_LAST_KEY, String.valueOf(id));
+                synchronized (this) {
+                    if (last != null) {
+                        lastMillis = Math.max(lastMillis, Long.parseLong(last.toString()) + leaseSeconds * 1000);
+                    }
+                    workerId = id;
+                    leaseValidUntil = acquiredAt + leaseSeconds * 1000;
+                }
+                log.info("雪花算法workerId租用成功, workerId={}", id);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有空闲的雪花算法workerId");
+    }
+
+    private void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            long last;
+            synchronized (this) {
+                last = lastMillis;
+            }
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Arrays.asList(RedisConstants.ID_WORKER_KEY + workerId, RedisConstants.ID_WORKER_LAST_KEY),
+                    nodeId, String.valueOf(leaseSeconds), String.valueOf(workerId), String.valueOf(last));
+            if (renewed != null && renewed == 1L) {
+                leaseValidUntil = now + leaseSeconds * 1000;
+                return;
+            }
+            // 租约已被其他节点占用（比如长时间GC后过期），先停止用旧workerId发号，再重新租用
+            log.warn("雪花算法workerId租约丢失, workerId={}, 重新租用", workerId);
+            synchronized (this) {
+                leaseValidUntil = 0;
+            }
+            acquireLease();
+        } catch (Exception e) {
+            log.error("雪花算法workerId续期失败, workerId={}", workerId, e);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (heartbeatExecutor == null) {
+            return;
+        }
+        heartbeatExecutor.shutdownNow();
+        try {
+            long last;
+            synchronized (this) {
+                // 停止发号后再记录最后的时间
+                leaseValidUntil = 0;
+                last = lastMillis;
+            }
+            stringRedisTemplate.opsForHash().put(RedisConstants.ID_WORKER_LAST_KEY, String.valueOf(workerId), String.valueOf(last));
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(RedisConstants.ID_WORKER_KEY + workerId), nodeId);
+        } catch (Exception e) {
+            log.warn("释放雪花算法workerId失败, workerId={}", workerId, e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.entity.User;
+import com.hmdp.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 用户公开资料缓存（id、昵称、头像），用于博客作者、点赞用户、共同关注等展示场景
+ * <p>
+ * 本地一级缓存 + Redis（CacheClient.batchQueryOptimized），只缓存公开字段，手机号和密码不会进入缓存。
+ * 用户资料更新时调用 invalidate，通过 CACHE_INVALIDATE_CHANNEL 通知所有节点清除本地缓存。
+ */
+@Slf4j
+@Component
+public class UserProfileCache {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 本地缓存最大用户数
+    @Value("${hmdp.user.profile.local.maximum-size:10000}")
+    private long localMaximumSize;
+
+    // 本地缓存存活时间，兜底跨节点一致性
+    @Value("${hmdp.user.profile.local.expire-seconds:60}")
+    private long localExpireSeconds;
+
+    private Cache<Long, User> localCache;
+
+    @PostConstruct
+    private void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        // CacheClient.delete 会广播被删除的key，这里只处理用户资料的key
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (key.startsWith(RedisConstants.CACHE_USER_PROFILE_KEY)) {
+                localCache.invalidate(Long.valueOf(key.substring(RedisConstants.CACHE_USER_PROFILE_KEY.length())));
+            }
+        }, new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 查询单个用户资料
+     * @param id 用户id
+     * @return 用户资料，不存在时返回null
+     */
+    public User get(Long id) {
+        return getAll(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * 批量查询用户资料
+     * @param ids 用户id
+     * @return 用户id -> 用户资料，不存在的用户不在结果中
+     */
+    public Map<Long, User> getAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // 1.本地缓存
+        Map<Long, User> result = new HashMap<>(localCache.getAllPresent(ids));
+        if (result.size() == ids.size()) {
+            return result;
+        }
+        // 2.Redis批量查询，未命中的一次查询数据库
+        List<Long> missed = ids.stream().filter(id -> !result.containsKey(id)).distinct().collect(Collectors.toList());
+        Map<Long, User> loaded = cacheClient.batchQueryOptimized(RedisConstants.CACHE_USER_PROFILE_KEY, missed, User.class,
+                this::loadFromDb, RedisConstants.CACHE_USER_PROFILE_TTL, TimeUnit.MINUTES);
+        // 3.写入本地缓存
+        localCache.putAll(loaded);
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * 批量查询用户资料，按传入顺序返回
+     * @param ids 用户id
+     * @return 用户资料列表，不存在的用户被跳过
+     */
+    public List<User> listByIds(Collection<Long> ids) {
+        Map<Long, User> users = getAll(ids);
+        return ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * 用户资料变更后清除缓存
+     * @param id 用户id
+     */
+    public void invalidate(Long id) {
+        localCache.invalidate(id);
+        cacheClient.delete(RedisConstants.CACHE_USER_PROFILE_KEY + id);
+    }
+
+    private Map<Long, User> loadFromDb(Collection<Long> ids) {
+        return userMapper.selectList(new QueryWrapper<User>()
+                        .select("id", "nick_name", "icon")
+                        .in("id", ids))
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+    }
+}
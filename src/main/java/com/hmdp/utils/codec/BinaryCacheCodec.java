@@ -0,0 +1,206 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.entity.User;
+import com.hmdp.utils.RedisData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 紧凑二进制编解码器，只支持注册过的实体类型
+ * <p>
+ * 格式：魔数(0xFE) | 版本号 | 类型标识 | 标志位 | [逻辑过期时间] | 字段...
+ * <br>
+ * 0xFE 在UTF-8中不会出现，因此可以和JSON格式的旧数据共存。
+ * 字段只能在末尾追加，调整已有字段的顺序或类型时必须升级版本号。
+ */
+@Slf4j
+@Component
+@Order(0)
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final String NAME = "binary";
+
+    private static final byte MAGIC = (byte) 0xFE;
+    private static final byte VERSION = 1;
+    private static final int FLAG_LOGICAL_EXPIRE = 1;
+
+    private final Map<Class<?>, Schema<?>> schemaByType = new HashMap<>();
+    private final Map<Integer, Schema<?>> schemaByTag = new HashMap<>();
+
+    /**
+     * 单个类型的读写规则
+     */
+    private record Schema<T>(int tag, Class<T> type, BiConsumer<BinaryWriter, T> writer,
+                             Function<BinaryReader, T> reader) {
+    }
+
+    public BinaryCacheCodec() {
+        // 类型标识一旦上线不可修改
+        register(1, Shop.class, (w, s) -> {
+            w.writeLong(s.getId());
+            w.writeString(s.getName());
+            w.writeLong(s.getTypeId());
+            w.writeString(s.getImages());
+            w.writeString(s.getArea());
+            w.writeString(s.getAddress());
+            w.writeDouble(s.getX());
+            w.writeDouble(s.getY());
+            w.writeLong(s.getAvgPrice());
+            w.writeInt(s.getSold());
+            w.writeInt(s.getComments());
+            w.writeInt(s.getScore());
+            w.writeString(s.getOpenHours());
+            w.writeDateTime(s.getCreateTime());
+            w.writeDateTime(s.getUpdateTime());
+        }, r -> new Shop()
+                .setId(r.readLong())
+                .setName(r.readString())
+                .setTypeId(r.readLong())
+                .setImages(r.readString())
+                .setArea(r.readString())
+                .setAddress(r.readString())
+                .setX(r.readDouble())
+                .setY(r.readDouble())
+                .setAvgPrice(r.readLong())
+                .setSold(r.readInt())
+                .setComments(r.readInt())
+                .setScore(r.readInt())
+                .setOpenHours(r.readString())
+                .setCreateTime(r.readDateTime())
+                .setUpdateTime(r.readDateTime()));
+        register(2, Blog.class, (w, b) -> {
+            w.writeLong(b.getId());
+            w.writeLong(b.getShopId());
+            w.writeLong(b.getUserId());
+            w.writeString(b.getIcon());
+            w.writeString(b.getName());
+            w.writeBoolean(b.getIsLike());
+            w.writeString(b.getTitle());
+            w.writeString(b.getImages());
+            w.writeString(b.getContent());
+            w.writeInt(b.getLiked());
+            w.writeInt(b.getComments());
+            w.writeDateTime(b.getCreateTime());
+            w.writeDateTime(b.getUpdateTime());
+        }, r -> new Blog()
+                .setId(r.readLong())
+                .setShopId(r.readLong())
+                .setUserId(r.readLong())
+                .setIcon(r.readString())
+                .setName(r.readString())
+                .setIsLike(r.readBoolean())
+                .setTitle(r.readString())
+                .setImages(r.readString())
+                .setContent(r.readString())
+                .setLiked(r.readInt())
+                .setComments(r.readInt())
+                .setCreateTime(r.readDateTime())
+                .setUpdateTime(r.readDateTime()));
+        register(3, User.class, (w, u) -> {
+            w.writeLong(u.getId());
+            w.writeString(u.getPhone());
+            w.writeString(u.getPassword());
+            w.writeString(u.getNickName());
+            w.writeString(u.getIcon());
+            w.writeDateTime(u.getCreateTime());
+            w.writeDateTime(u.getUpdateTime());
+        }, r -> new User()
+                .setId(r.readLong())
+                .setPhone(r.readString())
+                .setPassword(r.readString())
+                .setNickName(r.readString())
+                .setIcon(r.readString())
+                .setCreateTime(r.readDateTime())
+                .setUpdateTime(r.readDateTime()));
+        register(4, ShopType.class, (w, t) -> {
+            w.writeLong(t.getId());
+            w.writeString(t.getName());
+            w.writeString(t.getIcon());
+            w.writeInt(t.getSort());
+            w.writeDateTime(t.getCreateTime());
+            w.writeDateTime(t.getUpdateTime());
+        }, r -> new ShopType()
+                .setId(r.readLong())
+                .setName(r.readString())
+                .setIcon(r.readString())
+                .setSort(r.readInt())
+                .setCreateTime(r.readDateTime())
+                .setUpdateTime(r.readDateTime()));
+    }
+
+    private <T> void register(int tag, Class<T> type, BiConsumer<BinaryWriter, T> writer, Function<BinaryReader, T> reader) {
+        Schema<T> schema = new Schema<>(tag, type, writer, reader);
+        schemaByType.put(type, schema);
+        schemaByTag.put(tag, schema);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return schemaByType.containsKey(type);
+    }
+
+    @Override
+    public boolean accepts(byte[] bytes) {
+        return bytes.length >= 4 && bytes[0] == MAGIC;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object value, LocalDateTime expireTime) {
+        Schema<Object> schema = (Schema<Object>) schemaByType.get(value.getClass());
+        if (schema == null) {
+            throw new IllegalArgumentException("二进制编码不支持的类型: " + value.getClass().getName());
+        }
+        BinaryWriter w = new BinaryWriter();
+        w.writeByte(MAGIC);
+        w.writeByte(VERSION);
+        w.writeByte(schema.tag());
+        w.writeByte(expireTime == null ? 0 : FLAG_LOGICAL_EXPIRE);
+        if (expireTime != null) {
+            w.writeDateTime(expireTime);
+        }
+        schema.writer().accept(w, value);
+        return w.toByteArray();
+    }
+
+    @Override
+    public <T> RedisData<T> decode(byte[] bytes, Class<T> type, boolean logicalExpire) {
+        BinaryReader r = new BinaryReader(bytes, 1);
+        int version = r.readByte();
+        if (version != VERSION) {
+            // 未知版本（比如新版本节点写入的数据），当作未命中处理，由调用方重建
+            return null;
+        }
+        Schema<?> schema = schemaByTag.get(r.readByte());
+        if (schema == null || schema.type() != type) {
+            return null;
+        }
+        try {
+            int flags = r.readByte();
+            LocalDateTime expireTime = (flags & FLAG_LOGICAL_EXPIRE) != 0 ? r.readDateTime() : null;
+            return RedisData.<T>builder()
+                    .data(type.cast(schema.reader().apply(r)))
+                    .expireTime(expireTime)
+                    .build();
+        } catch (RuntimeException e) {
+            // 数据被截断或损坏（越界、非法时间等），同样当作未命中处理，由调用方重建后覆盖
+            log.warn("二进制缓存数据损坏，按未命中处理: type={}, length={}, cause={}", type.getSimpleName(), bytes.length, e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.hmdp.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 二进制读取工具，与 {@link BinaryWriter} 对应
+ */
+class BinaryReader {
+
+    private final byte[] buf;
+    private int pos;
+
+    BinaryReader(byte[] buf, int offset) {
+        this.buf = buf;
+        this.pos = offset;
+    }
+
+    int readByte() {
+        return buf[pos++] & 0xFF;
+    }
+
+    long readVarLong() {
+        long n = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = readByte();
+            n |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    Long readLong() {
+        return readByte() == 0 ? null : readVarLong();
+    }
+
+    Integer readInt() {
+        Long v = readLong();
+        return v == null ? null : v.intValue();
+    }
+
+    Double readDouble() {
+        if (readByte() == 0) {
+            return null;
+        }
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    Boolean readBoolean() {
+        int b = readByte();
+        return b == 0 ? null : b == 2;
+    }
+
+    String readString() {
+        int len = (int) readVarLong() - 1;
+        if (len < 0) {
+            return null;
+        }
+        String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+        pos += len;
+        return s;
+    }
+
+    LocalDateTime readDateTime() {
+        Long millis = readLong();
+        return millis == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
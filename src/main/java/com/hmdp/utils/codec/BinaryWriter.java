@@ -0,0 +1,89 @@
+package com.hmdp.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 二进制写入工具，整数使用zigzag变长编码，所有字段均可为null
+ */
+class BinaryWriter {
+
+    private byte[] buf = new byte[128];
+    private int pos;
+
+    void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    void writeVarLong(long v) {
+        // zigzag：让负数也能用较少的字节表示
+        long n = (v << 1) ^ (v >> 63);
+        while ((n & ~0x7FL) != 0) {
+            writeByte((int) ((n & 0x7F) | 0x80));
+            n >>>= 7;
+        }
+        writeByte((int) n);
+    }
+
+    void writeLong(Long v) {
+        if (v == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        writeVarLong(v);
+    }
+
+    void writeInt(Integer v) {
+        writeLong(v == null ? null : v.longValue());
+    }
+
+    void writeDouble(Double v) {
+        if (v == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        long bits = Double.doubleToLongBits(v);
+        ensure(8);
+        for (int i = 7; i >= 0; i--) {
+            buf[pos++] = (byte) (bits >>> (i * 8));
+        }
+    }
+
+    void writeBoolean(Boolean v) {
+        // 0：null，1：false，2：true
+        writeByte(v == null ? 0 : (v ? 2 : 1));
+    }
+
+    void writeString(String v) {
+        // 长度+1，0表示null
+        if (v == null) {
+            writeVarLong(0);
+            return;
+        }
+        byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    void writeDateTime(LocalDateTime v) {
+        // 与Hutool JSON一致，精确到毫秒
+        writeLong(v == null ? null : v.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+}
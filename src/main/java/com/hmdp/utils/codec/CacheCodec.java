@@ -0,0 +1,46 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.utils.RedisData;
+
+import java.time.LocalDateTime;
+
+/**
+ * 缓存值编解码器
+ * <p>
+ * CacheClient 写入时按配置的名称选择编解码器，读取时按字节头识别，
+ * 因此新旧格式可以在 Redis 中共存，便于灰度切换。
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器名称，对应配置项 hmdp.cache.codec
+     */
+    String name();
+
+    /**
+     * 是否能编码该类型
+     */
+    boolean supports(Class<?> type);
+
+    /**
+     * 是否能识别该字节（根据头部判断）
+     */
+    boolean accepts(byte[] bytes);
+
+    /**
+     * 编码
+     * @param value 缓存对象
+     * @param expireTime 逻辑过期时间，为null表示普通缓存
+     * @return 写入Redis的字节
+     */
+    byte[] encode(Object value, LocalDateTime expireTime);
+
+    /**
+     * 解码
+     * @param bytes Redis中的字节
+     * @param type 目标类型
+     * @param logicalExpire 是否为逻辑过期格式（JSON格式需要据此判断外层是否包了RedisData）
+     * @return 数据及逻辑过期时间，普通缓存的expireTime为null
+     */
+    <T> RedisData<T> decode(byte[] bytes, Class<T> type, boolean logicalExpire);
+}
@@ -0,0 +1,57 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.utils.RedisData;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Hutool JSON 编解码器，兼容已有的缓存数据，识别顺序排在最后
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return true;
+    }
+
+    @Override
+    public boolean accepts(byte[] bytes) {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Object value, LocalDateTime expireTime) {
+        Object target = expireTime == null ? value : RedisData.builder().data(value).expireTime(expireTime).build();
+        return JSONUtil.toJsonStr(target).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> RedisData<T> decode(byte[] bytes, Class<T> type, boolean logicalExpire) {
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        if (!logicalExpire) {
+            return RedisData.<T>builder().data(JSONUtil.toBean(json, type)).build();
+        }
+        // 只解析一次：直接从JSONObject中取出data和expireTime
+        JSONObject obj = JSONUtil.parseObj(json);
+        JSONObject data = obj.getJSONObject("data");
+        return RedisData.<T>builder()
+                .data(data == null ? null : data.toBean(type))
+                .expireTime(obj.get("expireTime", LocalDateTime.class))
+                .build();
+    }
+}
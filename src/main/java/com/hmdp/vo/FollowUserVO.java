@@ -0,0 +1,15 @@
+package com.hmdp.vo;
+
+import lombok.Data;
+
+/**
+ * 带关注状态的用户信息
+ */
+@Data
+public class FollowUserVO {
+    private Long id;
+    private String nickName;
+    private String icon;
+    // 当前用户是否已关注该用户
+    private Boolean isFollow;
+}
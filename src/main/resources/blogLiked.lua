@@ -7,12 +7,18 @@
 local blogLiked = KEYS[1]
 -- 点赞数量key（新增）
 local blogLikeCount = KEYS[2]
+-- 点赞数有变化的博客id集合，由定时任务刷回数据库
+local blogLikeDirty = KEYS[3]
+-- 热门博客排行榜
+local blogHot = KEYS[4]
 -- 用户id
 local userId = ARGV[1]
 -- 博客id
 local blogId = ARGV[2]
 -- 时间戳
 local timestamp = ARGV[3]
+-- 排行榜是否开启时间衰减，'1' 开启
+local hotDecay = ARGV[4]
 
 -- 返回值结果 -1 取消点赞，1 点赞
 local result
@@ -29,5 +35,16 @@ else
     redis.call('HINCRBY', blogLikeCount, blogId, 1)   -- 计数器加1
     result = 1  -- 成功点赞
 end
+-- 记录点赞数有变化的博客
+redis.call('SADD', blogLikeDirty, blogId)
+-- 更新热门排行榜
+-- 被裁剪出排行榜的博客再次被点赞时不能从0开始累加，否则分数与点赞数不一致，用计数器中的点赞总数重新写入
+local likeCount = redis.call('HGET', blogLikeCount, blogId)
+if (hotDecay == '1' and redis.call('ZSCORE', blogHot, blogId) ~= false) then
+    -- 开启衰减时分数是衰减后的值，只能增量更新
+    redis.call('ZINCRBY', blogHot, result, blogId)
+else
+    redis.call('ZADD', blogHot, likeCount, blogId)
+end
 
 return result
\ No newline at end of file
@@ -8,9 +8,11 @@
 -- KEYS[2] : 用户取消关注记录key (记录已取消关注的用户)
 -- KEYS[3] : 用户发布博客的key (hm-DianPing:blog:add:)
 -- KEYS[4] : 博客粉丝的key (hm-DianPing:blog:fans:)
+-- KEYS[5] : 关注事件消息队列 (stream.follows)，由消费者批量写入tb_follow
 -- ARGV[1] : 被关注用户id(博客id)
 -- ARGV[2] : 操作类型 (1表示关注，0表示取消关注)
 -- ARGV[3] : 用户id (粉丝)
+-- ARGV[4] : 消息队列最大积压数，超过后拒绝关注/取关（背压）
 local followKey = KEYS[1]
 local unfollowKey = KEYS[2]
 local userBlogKey = KEYS[3]
@@ -18,6 +20,8 @@ local blogFansKey = KEYS[4]
 local followUserId = ARGV[1]
 local isFollow = tonumber(ARGV[2])
 local userId = ARGV[3]
+local streamKey = KEYS[5]
+local maxBacklog = tonumber(ARGV[4])
 -- 判断用户博客是否存在
 local blogExists = redis.call('hget', userBlogKey,'user_id')
 if (isFollow == 1) then
@@ -31,12 +35,18 @@ if (isFollow == 1) then
         -- 已经关注，返回重复关注错误
         return { 1, "您已经关注过该用户！" }
     else
+        -- 数据库写入积压过多，拒绝本次操作
+        if (redis.call('xlen', streamKey) >= maxBacklog) then
+            return { -3, "操作过于频繁，请稍后再试！" }
+        end
         -- 移除取消关注记录
         redis.call('srem', unfollowKey, followUserId)
         -- 添加关注关系 (当前用户(粉丝) -> 博客)
         redis.call('sadd', followKey, followUserId)
         -- 添加粉丝(博客id -> 粉丝id)
         redis.call('sadd', blogFansKey,userId)
+        -- 发送关注事件 XADD stream.follows * userId followUserId type 1
+        redis.call('xadd', streamKey, '*', 'userId', userId, 'followUserId', followUserId, 'type', '1')
         return { 2, "关注成功！" }
     end
 else
@@ -50,6 +60,9 @@ else
         -- 已经取消关注，返回重复取消关注错误
         return { -1, "您已取消关注过用户！" }
     else
+        if (redis.call('xlen', streamKey) >= maxBacklog) then
+            return { -3, "操作过于频繁，请稍后再试！" }
+        end
         -- 没有取消关注，添加取消关注记录
         -- 记录取消关注
         redis.call('sadd', unfollowKey, followUserId)
@@ -57,6 +70,7 @@ else
         redis.call('srem', followKey, followUserId)
         -- 删除粉丝(博客 -> 粉丝)
         redis.call('srem', blogFansKey, userId)
+        redis.call('xadd', streamKey, '*', 'userId', userId, 'followUserId', followUserId, 'type', '0')
         return { -2, "取消关注成功！" }
     end
 end
@@ -0,0 +1,18 @@
+---
+--- 点赞数刷回数据库后，从脏集合中移除已刷新的博客
+--- 只移除点赞数仍等于刷新值的博客：刷新期间又有点赞的博客留在脏集合中，下一轮再刷
+--- KEYS[1] 脏集合key  KEYS[2] 点赞数Hash key
+--- ARGV 博客id, 刷新的点赞数（计数不存在时为空字符串）成对出现
+---
+
+local removed = 0
+for i = 1, #ARGV, 2 do
+    local current = redis.call('HGET', KEYS[2], ARGV[i])
+    if (current == false) then
+        current = ''
+    end
+    if (current == ARGV[i + 1]) then
+        removed = removed + redis.call('SREM', KEYS[1], ARGV[i])
+    end
+end
+return removed
@@ -0,0 +1,22 @@
+---
+--- 分段库存：在用户归属段上占位并尝试扣减库存，扣减成功时在同一个脚本中写入归属段的订单队列
+--- KEYS[1] 归属段库存key  KEYS[2] 归属段订单集合key  KEYS[3] 归属段订单队列key
+--- ARGV[1] 用户id  ARGV[2] 优惠券id  ARGV[3] 订单id
+---
+
+local userId = ARGV[1]
+-- 1.一人一单：用户只会在归属段的订单集合中出现
+if (redis.call('sismember', KEYS[2], userId) == 1) then
+    return 2
+end
+-- 2.占位，库存不足时由调用方撤销
+redis.call('sadd', KEYS[2], userId)
+-- 3.归属段库存充足，扣减并发送到消息队列 XADD stream.orders{voucherId:n} * k1 v1 k2 v2
+local stock = tonumber(redis.call('get', KEYS[1]))
+if (stock ~= nil and stock > 0) then
+    redis.call('decr', KEYS[1])
+    redis.call('xadd', KEYS[3], '*', 'userId', userId, 'voucherId', ARGV[2], 'id', ARGV[3])
+    return 0
+end
+-- 4.归属段已售罄，需要从其他段扣减
+return 3
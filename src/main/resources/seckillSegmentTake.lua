@@ -0,0 +1,13 @@
+---
+--- 分段库存：从指定段扣减一个库存，扣减成功时在同一个脚本中写入该段的订单队列
+--- KEYS[1] 段库存key  KEYS[2] 段订单队列key
+--- ARGV[1] 用户id  ARGV[2] 优惠券id  ARGV[3] 订单id
+---
+
+local stock = tonumber(redis.call('get', KEYS[1]))
+if (stock ~= nil and stock > 0) then
+    redis.call('decr', KEYS[1])
+    redis.call('xadd', KEYS[2], '*', 'userId', ARGV[1], 'voucherId', ARGV[2], 'id', ARGV[3])
+    return 0
+end
+return 1
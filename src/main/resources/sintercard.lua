@@ -0,0 +1,6 @@
+---
+--- 两个集合交集的元素个数（Redis 7.0+），不生成交集本身
+--- KEYS[1] KEYS[2] 集合key
+---
+
+return redis.call('SINTERCARD', 2, KEYS[1], KEYS[2])
@@ -0,0 +1,13 @@
+---
+--- 雪花算法workerId租约续期
+--- KEYS[1] workerId租约key  KEYS[2] 各workerId最后发号时间的Hash
+--- ARGV[1] 节点标识  ARGV[2] 租约秒数  ARGV[3] workerId  ARGV[4] 最后发号时间
+---
+
+-- 租约仍归本节点所有才续期
+if (redis.call('get', KEYS[1]) == ARGV[1]) then
+    redis.call('expire', KEYS[1], ARGV[2])
+    redis.call('hset', KEYS[2], ARGV[3], ARGV[4])
+    return 1
+end
+return 0
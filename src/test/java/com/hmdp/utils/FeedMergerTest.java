@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ScrollResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeedMergerTest {
+
+    // 收件箱：大V成为大V之前推送过的 15、14 同时存在于发件箱中
+    private static final List<TypedTuple<String>> INBOX = tuples("16:100", "15:100", "14:100", "13:90", "12:80");
+    private static final List<TypedTuple<String>> OUTBOX = tuples("17:100", "15:100", "14:100", "11:80");
+
+    @Test
+    void mergesInTimeThenIdOrderWithoutDuplicates() {
+        List<TypedTuple<String>> page = FeedMerger.merge(Arrays.asList(INBOX, OUTBOX), 0, 10);
+
+        assertThat(ids(page)).containsExactly("17", "16", "15", "14", "13", "12", "11");
+    }
+
+    @Test
+    void scrollsThroughEqualTimestampsWithoutRepeatsOrGaps() {
+        List<String> seen = new ArrayList<>();
+        long max = 200;
+        int offset = 0;
+        for (int round = 0; round < 10; round++) {
+            // 模拟 ZREVRANGEBYSCORE key max 0 LIMIT 0 offset+count
+            List<TypedTuple<String>> inbox = window(INBOX, max, offset + 2);
+            List<TypedTuple<String>> outbox = window(OUTBOX, max, offset + 2);
+            List<TypedTuple<String>> page = FeedMerger.merge(Arrays.asList(inbox, outbox), offset, 2);
+            if (page.isEmpty()) {
+                break;
+            }
+            seen.addAll(ids(page));
+            ScrollResult<Object> cursor = FeedMerger.nextCursor(page, max, offset);
+            max = cursor.getMinTime();
+            offset = cursor.getOffset();
+        }
+
+        assertThat(seen).containsExactly("17", "16", "15", "14", "13", "12", "11");
+    }
+
+    @Test
+    void skipsOffsetAfterDeduplication() {
+        // 上一页返回了 17、16，游标 minTime=100, offset=2
+        List<TypedTuple<String>> page = FeedMerger.merge(Arrays.asList(INBOX, OUTBOX), 2, 2);
+
+        assertThat(ids(page)).containsExactly("15", "14");
+    }
+
+    @Test
+    void cursorCountsPreviousOffsetWhenWholePageHasMaxTime() {
+        List<TypedTuple<String>> page = tuples("15:100", "14:100");
+
+        ScrollResult<Object> cursor = FeedMerger.nextCursor(page, 100, 2);
+
+        assertThat(cursor.getMinTime()).isEqualTo(100L);
+        assertThat(cursor.getOffset()).isEqualTo(4);
+    }
+
+    @Test
+    void cursorCountsOnlyTrailingTimestamp() {
+        List<TypedTuple<String>> page = tuples("14:100", "13:90", "12:90");
+
+        ScrollResult<Object> cursor = FeedMerger.nextCursor(page, 100, 3);
+
+        assertThat(cursor.getMinTime()).isEqualTo(90L);
+        assertThat(cursor.getOffset()).isEqualTo(2);
+    }
+
+    @Test
+    void emptySources() {
+        assertThat(FeedMerger.merge(Arrays.asList(tuples(), tuples()), 0, 2)).isEmpty();
+    }
+
+    private static List<TypedTuple<String>> window(List<TypedTuple<String>> source, long max, int limit) {
+        return source.stream().filter(t -> t.getScore() <= max).limit(limit).collect(Collectors.toList());
+    }
+
+    private static List<String> ids(List<TypedTuple<String>> page) {
+        return page.stream().map(TypedTuple::getValue).collect(Collectors.toList());
+    }
+
+    private static List<TypedTuple<String>> tuples(String... entries) {
+        List<TypedTuple<String>> list = new ArrayList<>();
+        for (String entry : entries) {
+            String[] parts = entry.split(":");
+            list.add(new DefaultTypedTuple<>(parts[0], Double.valueOf(parts[1])));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,118 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.RedisData;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryCacheCodecTest {
+
+    private static final LocalDateTime CREATE_TIME = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+    private static final LocalDateTime EXPIRE_TIME = LocalDateTime.of(2024, 1, 2, 4, 4, 5, 123_000_000);
+
+    private final BinaryCacheCodec binary = new BinaryCacheCodec();
+    private final JsonCacheCodec json = new JsonCacheCodec();
+    // 与 CacheClient 相同：按 @Order 顺序逐个判断字节头
+    private final List<CacheCodec> codecs = Arrays.asList(binary, json);
+
+    @Test
+    void roundTripsAllFieldsWithLogicalExpire() {
+        Shop shop = fullShop();
+
+        RedisData<Shop> decoded = binary.decode(binary.encode(shop, EXPIRE_TIME), Shop.class, true);
+
+        assertThat(decoded.getData()).isEqualTo(shop);
+        assertThat(decoded.getExpireTime()).isEqualTo(EXPIRE_TIME);
+    }
+
+    @Test
+    void roundTripsNullFields() {
+        Shop shop = new Shop().setId(1L);
+        Blog blog = new Blog().setId(2L).setIsLike(false).setContent("");
+
+        RedisData<Shop> decodedShop = binary.decode(binary.encode(shop, null), Shop.class, false);
+        RedisData<Blog> decodedBlog = binary.decode(binary.encode(blog, null), Blog.class, false);
+
+        assertThat(decodedShop.getData()).isEqualTo(shop);
+        assertThat(decodedShop.getExpireTime()).isNull();
+        assertThat(decodedBlog.getData()).isEqualTo(blog);
+    }
+
+    @Test
+    void detectsJsonAndBinaryByHeader() {
+        Shop shop = fullShop();
+        byte[] jsonBytes = json.encode(shop, EXPIRE_TIME);
+        byte[] binaryBytes = binary.encode(shop, EXPIRE_TIME);
+
+        assertThat(binary.accepts(jsonBytes)).isFalse();
+        assertThat(binary.accepts(binaryBytes)).isTrue();
+        // 旧的JSON数据和新的二进制数据读出来一致
+        assertThat(decode(jsonBytes).getData()).isEqualTo(shop);
+        assertThat(decode(binaryBytes).getData()).isEqualTo(shop);
+        assertThat(decode(jsonBytes).getExpireTime()).isEqualTo(decode(binaryBytes).getExpireTime());
+    }
+
+    @Test
+    void truncatedValueIsMiss() {
+        byte[] bytes = binary.encode(fullShop(), EXPIRE_TIME);
+
+        for (int length = 4; length < bytes.length; length++) {
+            assertThat(binary.decode(Arrays.copyOf(bytes, length), Shop.class, true))
+                    .as("截断到 %d 字节", length)
+                    .isNull();
+        }
+    }
+
+    @Test
+    void corruptStringLengthIsMiss() {
+        Shop shop = new Shop().setId(1L).setName("name");
+        byte[] bytes = binary.encode(shop, null);
+        // 头部4字节 + id(标记1字节 + varint1字节)，之后是name的长度（zigzag varint），改成超出剩余字节数的62
+        bytes[6] = 0x7E;
+
+        assertThat(binary.decode(bytes, Shop.class, false)).isNull();
+    }
+
+    @Test
+    void unknownVersionOrTypeIsMiss() {
+        byte[] bytes = binary.encode(fullShop(), null);
+
+        assertThat(binary.decode(bytes, Blog.class, false)).isNull();
+        bytes[1] = 99;
+        assertThat(binary.decode(bytes, Shop.class, false)).isNull();
+    }
+
+    private RedisData<Shop> decode(byte[] raw) {
+        for (CacheCodec codec : codecs) {
+            if (codec.accepts(raw)) {
+                return codec.decode(raw, Shop.class, true);
+            }
+        }
+        return null;
+    }
+
+    private static Shop fullShop() {
+        return new Shop()
+                .setId(10L)
+                .setName("茶餐厅")
+                .setTypeId(1L)
+                .setImages("a.jpg,b.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(CREATE_TIME)
+                .setUpdateTime(CREATE_TIME.plusDays(1));
+    }
+}